@@ -1,24 +1,22 @@
 package com.github.penfeizhou.animation.apng.decode;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.util.Log;
 
 import com.github.penfeizhou.animation.apng.io.APNGReader;
 import com.github.penfeizhou.animation.apng.io.APNGWriter;
+import com.github.penfeizhou.animation.decode.EncodedFrameCache;
 import com.github.penfeizhou.animation.decode.Frame;
+import com.github.penfeizhou.animation.decode.FrameCompositor;
 import com.github.penfeizhou.animation.decode.FrameSeqDecoder;
 import com.github.penfeizhou.animation.io.Reader;
 import com.github.penfeizhou.animation.loader.Loader;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.DataFormatException;
 
 /**
  * @Description: APNG4Android
@@ -30,16 +28,10 @@ public class APNGDecoder extends FrameSeqDecoder<APNGReader, APNGWriter> {
 
     private APNGWriter apngWriter;
     private int mLoopCount;
-    private final Paint paint = new Paint();
-
-
-    private static class SnapShot {
-        byte dispose_op;
-        Rect dstRect = new Rect();
-        ByteBuffer byteBuffer;
-    }
-
-    private final SnapShot snapShot = new SnapShot();
+    /**
+     * Decodes frame data without BitmapFactory, null when the image needs the fallback path
+     */
+    private FrameInflater frameInflater;
 
     /**
      * @param loader         webp的reader
@@ -47,7 +39,6 @@ public class APNGDecoder extends FrameSeqDecoder<APNGReader, APNGWriter> {
      */
     public APNGDecoder(Loader loader, RenderListener renderListener) {
         super(loader, renderListener);
-        paint.setAntiAlias(true);
     }
 
     @Override
@@ -70,26 +61,64 @@ public class APNGDecoder extends FrameSeqDecoder<APNGReader, APNGWriter> {
 
     @Override
     protected void release() {
-        snapShot.byteBuffer = null;
         apngWriter = null;
+        if (frameInflater != null) {
+            frameInflater.release();
+            frameInflater = null;
+        }
     }
 
 
     @Override
     protected Rect read(APNGReader reader) throws IOException {
-        List<Chunk> chunks = APNGParser.parse(reader);
-        List<Chunk> otherChunks = new ArrayList<>();
+        return read(reader, Integer.MAX_VALUE);
+    }
+
+    @Override
+    protected Rect readFirstFrame(APNGReader reader) throws IOException {
+        return read(reader, 1);
+    }
+
+    @Override
+    protected Rect readBounds(APNGReader reader) throws IOException {
+        // IHDR必须是签名后的第一个chunk，宽高即画布大小
+        if (!reader.matchFourCC("\u0089PNG") || !reader.matchFourCC("\r\n\u001a\n")) {
+            return null;
+        }
+        reader.readInt();
+        if (!reader.matchFourCC("IHDR")) {
+            return null;
+        }
+        int width = reader.readInt();
+        int height = reader.readInt();
+        return new Rect(0, 0, width, height);
+    }
+
+    private Rect read(APNGReader reader, int frameLimit) throws IOException {
+        ChunkTable table = new ChunkTable();
+        List<Chunk> chunks = APNGParser.parse(reader, table, frameLimit);
+        ChunkTable imageChunks = new ChunkTable();
+        ChunkTable otherChunks = new ChunkTable();
 
         boolean actl = false;
         APNGFrame lastFrame = null;
         byte[] ihdrData = new byte[0];
+        IHDRChunk ihdrChunk = null;
+        PLTEChunk plteChunk = null;
+        TRNSChunk trnsChunk = null;
         int canvasWidth = 0, canvasHeight = 0;
-        for (Chunk chunk : chunks) {
+        int parsed = 0;
+        for (int i = 0; i < table.size(); i++) {
+            int fourcc = table.fourcc(i);
+            Chunk chunk = null;
+            if (parsed < chunks.size() && chunks.get(parsed).offset == table.offset(i)) {
+                chunk = chunks.get(parsed++);
+            }
             if (chunk instanceof IENDChunk) {
                 Log.e(TAG, "chunk read reach to end");
                 break;
             }
-            
+
             if (chunk instanceof ACTLChunk) {
                 mLoopCount = ((ACTLChunk) chunk).num_plays;
                 actl = true;
@@ -97,13 +126,16 @@ public class APNGDecoder extends FrameSeqDecoder<APNGReader, APNGWriter> {
                 APNGFrame frame = new APNGFrame(reader, (FCTLChunk) chunk);
                 frame.prefixChunks = otherChunks;
                 frame.ihdrData = ihdrData;
+                frame.imageChunks = imageChunks;
+                frame.imageStart = frame.imageEnd = imageChunks.size();
                 frames.add(frame);
                 lastFrame = frame;
-            } else if (chunk instanceof FDATChunk) {
+            } else if (fourcc == FDATChunk.ID) {
                 if (lastFrame != null) {
-                    lastFrame.imageChunks.add(chunk);
+                    imageChunks.add(fourcc, table.offset(i), table.length(i));
+                    lastFrame.imageEnd = imageChunks.size();
                 }
-            } else if (chunk instanceof IDATChunk) {
+            } else if (fourcc == IDATChunk.ID) {
                 if (!actl) {
                     //如果为非APNG图片，则只解码PNG
                     Frame<APNGReader, APNGWriter> frame = new StillFrame(reader);
@@ -114,19 +146,31 @@ public class APNGDecoder extends FrameSeqDecoder<APNGReader, APNGWriter> {
                     break;
                 }
                 if (lastFrame != null) {
-                    lastFrame.imageChunks.add(chunk);
+                    imageChunks.add(fourcc, table.offset(i), table.length(i));
+                    lastFrame.imageEnd = imageChunks.size();
                 }
 
             } else if (chunk instanceof IHDRChunk) {
                 canvasWidth = ((IHDRChunk) chunk).width;
                 canvasHeight = ((IHDRChunk) chunk).height;
                 ihdrData = ((IHDRChunk) chunk).data;
-            } else if (!(chunk instanceof IENDChunk)) {
-                otherChunks.add(chunk);
+                ihdrChunk = (IHDRChunk) chunk;
+            } else {
+                if (chunk instanceof PLTEChunk) {
+                    plteChunk = (PLTEChunk) chunk;
+                } else if (chunk instanceof TRNSChunk) {
+                    trnsChunk = (TRNSChunk) chunk;
+                }
+                otherChunks.add(fourcc, table.offset(i), table.length(i));
             }
         }
-        frameBuffer = ByteBuffer.allocate((canvasWidth * canvasHeight / (sampleSize * sampleSize) + 1) * 4);
-        snapShot.byteBuffer = ByteBuffer.allocate((canvasWidth * canvasHeight / (sampleSize * sampleSize) + 1) * 4);
+        if (frameInflater != null) {
+            frameInflater.release();
+            frameInflater = null;
+        }
+        if (actl && ihdrChunk != null && FrameInflater.isSupported(ihdrChunk)) {
+            frameInflater = new FrameInflater(ihdrChunk, plteChunk, trnsChunk);
+        }
         return new Rect(0, 0, canvasWidth, canvasHeight);
     }
 
@@ -136,73 +180,65 @@ public class APNGDecoder extends FrameSeqDecoder<APNGReader, APNGWriter> {
             return;
         }
         try {
-            Bitmap bitmap = obtainBitmap(fullRect.width() / sampleSize, fullRect.height() / sampleSize);
-            Canvas canvas = cachedCanvas.get(bitmap);
-            if (canvas == null) {
-                canvas = new Canvas(bitmap);
-                cachedCanvas.put(bitmap, canvas);
-            }
+            FrameCompositor compositor = obtainCompositor();
+            int x = frame.frameX / sampleSize;
+            int y = frame.frameY / sampleSize;
+            int blendOp = FrameCompositor.BLEND_OP_OVER;
             if (frame instanceof APNGFrame) {
-                // 从缓存中恢复当前帧
-                frameBuffer.rewind();
-                bitmap.copyPixelsFromBuffer(frameBuffer);
-                // 开始绘制前，处理快照中的设定
+                APNGFrame apngFrame = (APNGFrame) frame;
+                // 开始绘制前，处理上一帧的dispose设定
                 if (this.frameIndex == 0) {
-                    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                    compositor.clear(Color.TRANSPARENT);
                 } else {
-                    canvas.save();
-                    canvas.clipRect(snapShot.dstRect);
-                    switch (snapShot.dispose_op) {
-                        // 从快照中恢复上一帧之前的显示内容
-                        case FCTLChunk.APNG_DISPOSE_OP_PREVIOUS:
-                            snapShot.byteBuffer.rewind();
-                            bitmap.copyPixelsFromBuffer(snapShot.byteBuffer);
-                            break;
-                        // 清空上一帧所画区域
-                        case FCTLChunk.APNG_DISPOSE_OP_BACKGROUND:
-                            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-                            break;
-                        // 什么都不做
-                        case FCTLChunk.APNG_DISPOSE_OP_NON:
-                        default:
-                            break;
-                    }
-                    canvas.restore();
-                }
-
-                // 然后根据dispose设定传递到快照信息中
-                if (((APNGFrame) frame).dispose_op == FCTLChunk.APNG_DISPOSE_OP_PREVIOUS) {
-                    if (snapShot.dispose_op != FCTLChunk.APNG_DISPOSE_OP_PREVIOUS) {
-                        snapShot.byteBuffer.rewind();
-                        bitmap.copyPixelsToBuffer(snapShot.byteBuffer);
-                    }
-                }
-
-                snapShot.dispose_op = ((APNGFrame) frame).dispose_op;
-                canvas.save();
-                if (((APNGFrame) frame).blend_op == FCTLChunk.APNG_BLEND_OP_SOURCE) {
-                    canvas.clipRect(
-                            frame.frameX / sampleSize,
-                            frame.frameY / sampleSize,
-                            (frame.frameX + frame.frameWidth) / sampleSize,
-                            (frame.frameY + frame.frameHeight) / sampleSize);
-                    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                    compositor.dispose();
                 }
-
-
-                snapShot.dstRect.set(frame.frameX / sampleSize,
-                        frame.frameY / sampleSize,
+                // APNG的dispose_op与blend_op取值与FrameCompositor一致
+                compositor.setDisposal(apngFrame.dispose_op, Color.TRANSPARENT,
+                        x,
+                        y,
                         (frame.frameX + frame.frameWidth) / sampleSize,
                         (frame.frameY + frame.frameHeight) / sampleSize);
-                canvas.restore();
+                blendOp = apngFrame.blend_op;
+            } else {
+                compositor.clear(Color.TRANSPARENT);
             }
             //开始真正绘制当前帧的内容
+            if (frame instanceof APNGFrame && frameInflater != null) {
+                try {
+                    ((APNGFrame) frame).inflate(frameInflater, sampleSize, getWriter(),
+                            getEncodedFrameCache(), frameIndex);
+                    compositor.blend(frameInflater.getPixels(), 0, frameInflater.getWidth(),
+                            x, y, frameInflater.getWidth(), frameInflater.getHeight(), blendOp);
+                    compositor.copyTo(frameBuffer);
+                    return;
+                } catch (DataFormatException e) {
+                    // 数据无法直接解压时退回BitmapFactory解码
+                    Log.e(TAG, "inflate frame failed, fallback to BitmapFactory", e);
+                    frameInflater.release();
+                    frameInflater = null;
+                    // 缓存内容为zlib数据，BitmapFactory路径不可复用
+                    EncodedFrameCache cache = getEncodedFrameCache();
+                    if (cache != null) {
+                        cache.evictAll();
+                    }
+                }
+            }
             Bitmap inBitmap = obtainBitmap(frame.frameWidth, frame.frameHeight);
-            recycleBitmap(frame.draw(canvas, paint, sampleSize, inBitmap, getWriter()));
+            Bitmap bitmap;
+            if (frame instanceof APNGFrame) {
+                bitmap = ((APNGFrame) frame).decode(sampleSize, inBitmap, getWriter(),
+                        getEncodedFrameCache(), frameIndex);
+            } else {
+                bitmap = ((StillFrame) frame).decode(sampleSize, inBitmap);
+            }
+            if (bitmap != null) {
+                compositeBitmap(compositor, bitmap, x, y, blendOp);
+                if (bitmap != inBitmap) {
+                    recycleBitmap(bitmap);
+                }
+            }
             recycleBitmap(inBitmap);
-            frameBuffer.rewind();
-            bitmap.copyPixelsToBuffer(frameBuffer);
-            recycleBitmap(bitmap);
+            compositor.copyTo(frameBuffer);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -8,12 +8,12 @@ import android.graphics.Rect;
 
 import com.github.penfeizhou.animation.apng.io.APNGReader;
 import com.github.penfeizhou.animation.apng.io.APNGWriter;
+import com.github.penfeizhou.animation.decode.EncodedFrameCache;
 import com.github.penfeizhou.animation.decode.Frame;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
 
 /**
  * @Description: APNG4Android
@@ -24,8 +24,13 @@ public class APNGFrame extends Frame<APNGReader, APNGWriter> {
     public final byte blend_op;
     public final byte dispose_op;
     byte[] ihdrData;
-    List<Chunk> imageChunks = new ArrayList<>();
-    List<Chunk> prefixChunks = new ArrayList<>();
+    /**
+     * IDAT/fdAT chunks of this frame are [imageStart, imageEnd) of imageChunks
+     */
+    ChunkTable imageChunks;
+    int imageStart;
+    int imageEnd;
+    ChunkTable prefixChunks;
     private static final byte[] sPNGSignatures = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
     private static final byte[] sPNGEndChunk = {0, 0, 0, 0, 0x49, 0x45, 0x4E, 0x44, (byte) 0xAE, 0x42, 0x60, (byte) 0x82};
 
@@ -63,16 +68,17 @@ public class APNGFrame extends Frame<APNGReader, APNGWriter> {
         int fileSize = 8 + 13 + 12;
 
         //prefixChunks
-        for (Chunk chunk : prefixChunks) {
-            fileSize += chunk.length + 12;
+        for (int i = 0; i < prefixChunks.size(); i++) {
+            fileSize += prefixChunks.length(i) + 12;
         }
 
         //imageChunks
-        for (Chunk chunk : imageChunks) {
-            if (chunk instanceof IDATChunk) {
-                fileSize += chunk.length + 12;
-            } else if (chunk instanceof FDATChunk) {
-                fileSize += chunk.length + 8;
+        for (int i = imageStart; i < imageEnd; i++) {
+            int fourcc = imageChunks.fourcc(i);
+            if (fourcc == IDATChunk.ID) {
+                fileSize += imageChunks.length(i) + 12;
+            } else if (fourcc == FDATChunk.ID) {
+                fileSize += imageChunks.length(i) + 8;
             }
         }
         fileSize += sPNGEndChunk.length;
@@ -91,35 +97,33 @@ public class APNGFrame extends Frame<APNGReader, APNGWriter> {
         apngWriter.writeInt((int) crc32.getValue());
 
         //prefixChunks
-        for (Chunk chunk : prefixChunks) {
-            if (chunk instanceof IENDChunk) {
+        for (int i = 0; i < prefixChunks.size(); i++) {
+            if (prefixChunks.fourcc(i) == IENDChunk.ID) {
                 continue;
             }
-            reader.reset();
-            reader.skip(chunk.offset);
-            reader.read(apngWriter.toByteArray(), apngWriter.position(), chunk.length + 12);
-            apngWriter.skip(chunk.length + 12);
+            int length = prefixChunks.length(i);
+            reader.read(prefixChunks.offset(i), apngWriter.toByteArray(), apngWriter.position(), length + 12);
+            apngWriter.skip(length + 12);
         }
         //imageChunks
-        for (Chunk chunk : imageChunks) {
-            if (chunk instanceof IDATChunk) {
-                reader.reset();
-                reader.skip(chunk.offset);
-                reader.read(apngWriter.toByteArray(), apngWriter.position(), chunk.length + 12);
-                apngWriter.skip(chunk.length + 12);
-            } else if (chunk instanceof FDATChunk) {
-                apngWriter.writeInt(chunk.length - 4);
+        for (int i = imageStart; i < imageEnd; i++) {
+            int fourcc = imageChunks.fourcc(i);
+            int offset = imageChunks.offset(i);
+            int length = imageChunks.length(i);
+            if (fourcc == IDATChunk.ID) {
+                reader.read(offset, apngWriter.toByteArray(), apngWriter.position(), length + 12);
+                apngWriter.skip(length + 12);
+            } else if (fourcc == FDATChunk.ID) {
+                apngWriter.writeInt(length - 4);
                 start = apngWriter.position();
                 apngWriter.writeFourCC(IDATChunk.ID);
 
-                reader.reset();
-                // skip to fdat data position
-                reader.skip(chunk.offset + 4 + 4 + 4);
-                reader.read(apngWriter.toByteArray(), apngWriter.position(), chunk.length - 4);
+                // read from fdat data position
+                reader.read(offset + 4 + 4 + 4, apngWriter.toByteArray(), apngWriter.position(), length - 4);
 
-                apngWriter.skip(chunk.length - 4);
+                apngWriter.skip(length - 4);
                 crc32.reset();
-                crc32.update(apngWriter.toByteArray(), start, chunk.length);
+                crc32.update(apngWriter.toByteArray(), start, length);
                 apngWriter.writeInt((int) crc32.getValue());
             }
         }
@@ -129,29 +133,113 @@ public class APNGFrame extends Frame<APNGReader, APNGWriter> {
     }
 
 
-    @Override
-    public Bitmap draw(Canvas canvas, Paint paint, int sampleSize, Bitmap reusedBitmap, APNGWriter writer) {
+    /**
+     * Concatenate the zlib payloads of this frame's IDAT/fdAT chunks into the writer
+     *
+     * @return length of the zlib stream
+     */
+    private int readImageData(APNGWriter apngWriter) throws IOException {
+        int size = 0;
+        for (int i = imageStart; i < imageEnd; i++) {
+            int fourcc = imageChunks.fourcc(i);
+            if (fourcc == IDATChunk.ID) {
+                size += imageChunks.length(i);
+            } else if (fourcc == FDATChunk.ID) {
+                size += imageChunks.length(i) - 4;
+            }
+        }
+        apngWriter.reset(size);
+        for (int i = imageStart; i < imageEnd; i++) {
+            int fourcc = imageChunks.fourcc(i);
+            int offset, length;
+            if (fourcc == IDATChunk.ID) {
+                offset = imageChunks.offset(i) + 4 + 4;
+                length = imageChunks.length(i);
+            } else if (fourcc == FDATChunk.ID) {
+                // skip to fdat data position
+                offset = imageChunks.offset(i) + 4 + 4 + 4;
+                length = imageChunks.length(i) - 4;
+            } else {
+                continue;
+            }
+            reader.read(offset, apngWriter.toByteArray(), apngWriter.position(), length);
+            apngWriter.skip(length);
+        }
+        return size;
+    }
+
+    /**
+     * Decode this frame into a bitmap without drawing it anywhere
+     */
+    Bitmap decode(int sampleSize, Bitmap reusedBitmap, APNGWriter writer) throws IOException {
+        return decode(sampleSize, reusedBitmap, writer, null, 0);
+    }
+
+    /**
+     * Decode this frame into a bitmap, taking the rebuilt PNG from cache when present
+     *
+     * @param cache may be null
+     * @param index frame index used as cache key
+     */
+    Bitmap decode(int sampleSize, Bitmap reusedBitmap, APNGWriter writer,
+                  EncodedFrameCache cache, int index) throws IOException {
+        byte[] bytes = cache == null ? null : cache.get(index);
+        int length;
+        if (bytes == null) {
+            length = encode(writer);
+            bytes = writer.toByteArray();
+            if (cache != null) {
+                bytes = cache.put(index, bytes, length);
+            }
+        } else {
+            length = bytes.length;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inBitmap = reusedBitmap;
+
+        Bitmap bitmap;
         try {
-            int length = encode(writer);
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = false;
-            options.inSampleSize = sampleSize;
-            options.inMutable = true;
-            options.inBitmap = reusedBitmap;
-            byte[] bytes = writer.toByteArray();
-
-            Bitmap bitmap;
-            try {
-                bitmap = BitmapFactory.decodeByteArray(bytes, 0, length, options);
-            } catch (IllegalArgumentException e) {
-                // Problem decoding into existing bitmap when on Android 4.2.2 & 4.3
-                BitmapFactory.Options optionsFixed = new BitmapFactory.Options();
-                optionsFixed.inJustDecodeBounds = false;
-                optionsFixed.inSampleSize = sampleSize;
-                optionsFixed.inMutable = true;
-                bitmap = BitmapFactory.decodeByteArray(bytes, 0, length, optionsFixed);
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, length, options);
+        } catch (IllegalArgumentException e) {
+            // Problem decoding into existing bitmap when on Android 4.2.2 & 4.3
+            BitmapFactory.Options optionsFixed = new BitmapFactory.Options();
+            optionsFixed.inJustDecodeBounds = false;
+            optionsFixed.inSampleSize = sampleSize;
+            optionsFixed.inMutable = true;
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, length, optionsFixed);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decode this frame's image data into the inflater's pixel buffer, skipping the PNG rebuild
+     *
+     * @param cache may be null, holds the frame's zlib stream
+     * @param index frame index used as cache key
+     */
+    void inflate(FrameInflater inflater, int sampleSize, APNGWriter writer,
+                 EncodedFrameCache cache, int index) throws IOException, DataFormatException {
+        byte[] data = cache == null ? null : cache.get(index);
+        int length;
+        if (data == null) {
+            length = readImageData(writer);
+            data = writer.toByteArray();
+            if (cache != null) {
+                data = cache.put(index, data, length);
             }
+        } else {
+            length = data.length;
+        }
+        inflater.decode(data, 0, length, frameWidth, frameHeight, sampleSize);
+    }
 
+    @Override
+    public Bitmap draw(Canvas canvas, Paint paint, int sampleSize, Bitmap reusedBitmap, APNGWriter writer) {
+        try {
+            Bitmap bitmap = decode(sampleSize, reusedBitmap, writer);
             assert bitmap != null;
             srcRect.left = 0;
             srcRect.top = 0;
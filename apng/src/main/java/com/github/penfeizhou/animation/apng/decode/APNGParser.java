@@ -9,6 +9,7 @@ import com.github.penfeizhou.animation.io.StreamReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -84,36 +85,90 @@ public class APNGParser {
             if (!reader.matchFourCC("\u0089PNG") || !reader.matchFourCC("\r\n\u001a\n")) {
                 throw new FormatException();
             }
-            while (reader.available() > 0) {
-                Chunk chunk = parseChunk(reader);
-                if (chunk instanceof ACTLChunk) {
-                    return true;
-                }
-            }
         } catch (IOException e) {
             if (!(e instanceof FormatException)) {
                 e.printStackTrace();
             }
+            return false;
+        }
+        return hasACTL(reader);
+    }
+
+    /**
+     * Same as {@link #isAPNG(Reader)} for a reader already past the PNG signature.
+     * Only chunk headers are read, acTL must appear before the first IDAT.
+     */
+    public static boolean hasACTL(Reader in) {
+        APNGReader reader = (in instanceof APNGReader) ? (APNGReader) in : new APNGReader(in);
+        try {
+            while (true) {
+                int size = reader.readInt();
+                int fourCC = reader.readFourCC();
+                if (fourCC == ACTLChunk.ID) {
+                    return true;
+                }
+                if (fourCC == IDATChunk.ID || fourCC == IENDChunk.ID || size < 0) {
+                    return false;
+                }
+                // skip payload and crc
+                if (reader.skip(size + 4L) != size + 4L) {
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            // ByteBufferReader past its limit, the source is truncated
         }
         return false;
     }
 
-    public static List<Chunk> parse(APNGReader reader) throws IOException {
+    /**
+     * Record every chunk header in table, only chunks the decoder needs the content of are
+     * parsed into objects, i.e. IHDR, acTL, fcTL, PLTE, tRNS and IEND.
+     *
+     * @return the parsed chunks in file order
+     */
+    public static List<Chunk> parse(APNGReader reader, ChunkTable table) throws IOException {
+        return parse(reader, table, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param frameLimit stop at the fcTL of frame frameLimit + 1, so later frames are not walked
+     */
+    public static List<Chunk> parse(APNGReader reader, ChunkTable table, int frameLimit) throws IOException {
         if (!reader.matchFourCC("\u0089PNG") || !reader.matchFourCC("\r\n\u001a\n")) {
             throw new FormatException();
         }
 
         List<Chunk> chunks = new ArrayList<>();
+        int frameCount = 0;
         while (reader.available() > 0) {
-            chunks.add(parseChunk(reader));
+            int offset = reader.position();
+            int size = reader.readInt();
+            int fourCC = reader.readFourCC();
+            if (fourCC == FCTLChunk.ID && ++frameCount > frameLimit) {
+                break;
+            }
+            table.add(fourCC, offset, size);
+            if (fourCC == IHDRChunk.ID || fourCC == ACTLChunk.ID || fourCC == FCTLChunk.ID
+                    || fourCC == PLTEChunk.ID || fourCC == TRNSChunk.ID || fourCC == IENDChunk.ID) {
+                Chunk chunk = newChunk(fourCC);
+                chunk.offset = offset;
+                chunk.fourcc = fourCC;
+                chunk.length = size;
+                chunk.parse(reader);
+                chunk.crc = reader.readInt();
+                chunks.add(chunk);
+            } else {
+                // skip data and crc
+                reader.skip(size + 4L);
+            }
         }
         return chunks;
     }
 
-    private static Chunk parseChunk(APNGReader reader) throws IOException {
-        int offset = reader.position();
-        int size = reader.readInt();
-        int fourCC = reader.readFourCC();
+    private static Chunk newChunk(int fourCC) {
         Chunk chunk;
         if (fourCC == ACTLChunk.ID) {
             chunk = new ACTLChunk();
@@ -127,14 +182,13 @@ public class APNGParser {
             chunk = new IENDChunk();
         } else if (fourCC == IHDRChunk.ID) {
             chunk = new IHDRChunk();
+        } else if (fourCC == PLTEChunk.ID) {
+            chunk = new PLTEChunk();
+        } else if (fourCC == TRNSChunk.ID) {
+            chunk = new TRNSChunk();
         } else {
             chunk = new Chunk();
         }
-        chunk.offset = offset;
-        chunk.fourcc = fourCC;
-        chunk.length = size;
-        chunk.parse(reader);
-        chunk.crc = reader.readInt();
         return chunk;
     }
 }
@@ -0,0 +1,49 @@
+package com.github.penfeizhou.animation.apng.decode;
+
+import java.util.Arrays;
+
+/**
+ * @Description: Chunk headers kept in parallel primitive arrays instead of one object per chunk.
+ * Filled while parsing, after that it is only read and may be shared across threads.
+ */
+class ChunkTable {
+    private int size;
+    private int[] fourcc = new int[16];
+    /**
+     * Offset of the chunk's length field
+     */
+    private int[] offset = new int[16];
+    /**
+     * Length of the chunk data, excluding length, fourcc and crc fields
+     */
+    private int[] length = new int[16];
+
+    void add(int fourcc, int offset, int length) {
+        if (size == this.fourcc.length) {
+            int capacity = size * 2;
+            this.fourcc = Arrays.copyOf(this.fourcc, capacity);
+            this.offset = Arrays.copyOf(this.offset, capacity);
+            this.length = Arrays.copyOf(this.length, capacity);
+        }
+        this.fourcc[size] = fourcc;
+        this.offset[size] = offset;
+        this.length[size] = length;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int fourcc(int index) {
+        return fourcc[index];
+    }
+
+    int offset(int index) {
+        return offset[index];
+    }
+
+    int length(int index) {
+        return length[index];
+    }
+}
@@ -0,0 +1,323 @@
+package com.github.penfeizhou.animation.apng.decode;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * @Description: Decodes APNG frame data straight into compositor pixels.
+ * Inflates the IDAT/fdAT zlib stream, reverses the PNG row filters and expands palette,
+ * tRNS and bit depths, instead of rebuilding a standalone PNG for BitmapFactory.
+ * Output pixels use the layout of {@link com.github.penfeizhou.animation.decode.FrameCompositor}.
+ * @Link https://www.w3.org/TR/PNG/#9Filters
+ */
+class FrameInflater {
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_INDEXED = 3;
+    private static final int COLOR_TYPE_GRAY_ALPHA = 4;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private final int bitDepth;
+    private final int colorType;
+    /**
+     * Bits per pixel
+     */
+    private final int pixelBits;
+    private final int[] palette = new int[256];
+    /**
+     * Transparent sample from tRNS for gray / RGB images, -1 if none
+     */
+    private int transparentGray = -1;
+    private int transparentRed = -1;
+    private int transparentGreen = -1;
+    private int transparentBlue = -1;
+
+    private final Inflater inflater = new Inflater();
+    private byte[] currentRow = new byte[0];
+    private byte[] previousRow = new byte[0];
+    private int[] pixels = new int[0];
+    private int outWidth;
+    private int outHeight;
+
+    static boolean isSupported(IHDRChunk ihdrChunk) {
+        if (ihdrChunk.interlace()) {
+            return false;
+        }
+        int bitDepth = ihdrChunk.bitDepth();
+        switch (ihdrChunk.colorType()) {
+            case COLOR_TYPE_GRAY:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8 || bitDepth == 16;
+            case COLOR_TYPE_INDEXED:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8;
+            case COLOR_TYPE_RGB:
+            case COLOR_TYPE_GRAY_ALPHA:
+            case COLOR_TYPE_RGBA:
+                return bitDepth == 8 || bitDepth == 16;
+            default:
+                return false;
+        }
+    }
+
+    FrameInflater(IHDRChunk ihdrChunk, PLTEChunk plteChunk, TRNSChunk trnsChunk) {
+        bitDepth = ihdrChunk.bitDepth();
+        colorType = ihdrChunk.colorType();
+        int channels;
+        switch (colorType) {
+            case COLOR_TYPE_RGB:
+                channels = 3;
+                break;
+            case COLOR_TYPE_GRAY_ALPHA:
+                channels = 2;
+                break;
+            case COLOR_TYPE_RGBA:
+                channels = 4;
+                break;
+            default:
+                channels = 1;
+                break;
+        }
+        pixelBits = channels * bitDepth;
+        byte[] trns = trnsChunk == null ? null : trnsChunk.data;
+        if (colorType == COLOR_TYPE_INDEXED) {
+            byte[] plte = plteChunk == null ? new byte[0] : plteChunk.data;
+            for (int i = 0; i < palette.length; i++) {
+                if (i * 3 + 2 < plte.length) {
+                    int alpha = trns != null && i < trns.length ? trns[i] & 0xff : 0xff;
+                    palette[i] = pack(plte[i * 3] & 0xff, plte[i * 3 + 1] & 0xff, plte[i * 3 + 2] & 0xff, alpha);
+                } else {
+                    palette[i] = 0xff000000;
+                }
+            }
+        } else if (trns != null) {
+            if (colorType == COLOR_TYPE_GRAY && trns.length >= 2) {
+                transparentGray = (trns[0] & 0xff) << 8 | (trns[1] & 0xff);
+            } else if (colorType == COLOR_TYPE_RGB && trns.length >= 6) {
+                transparentRed = (trns[0] & 0xff) << 8 | (trns[1] & 0xff);
+                transparentGreen = (trns[2] & 0xff) << 8 | (trns[3] & 0xff);
+                transparentBlue = (trns[4] & 0xff) << 8 | (trns[5] & 0xff);
+            }
+        }
+    }
+
+    int[] getPixels() {
+        return pixels;
+    }
+
+    int getWidth() {
+        return outWidth;
+    }
+
+    int getHeight() {
+        return outHeight;
+    }
+
+    /**
+     * Decode one frame, keeping every sampleSize-th pixel of every sampleSize-th row.
+     *
+     * @param data zlib stream of the frame, i.e. its IDAT or fdAT payloads concatenated
+     */
+    void decode(byte[] data, int offset, int length, int width, int height, int sampleSize)
+            throws DataFormatException {
+        outWidth = Math.max(1, width / sampleSize);
+        outHeight = Math.max(1, height / sampleSize);
+        if (pixels.length < outWidth * outHeight) {
+            pixels = new int[outWidth * outHeight];
+        }
+        int rowBytes = (width * pixelBits + 7) / 8;
+        if (currentRow.length < rowBytes + 1) {
+            currentRow = new byte[rowBytes + 1];
+            previousRow = new byte[rowBytes + 1];
+        }
+        // The row above the first one is treated as all zeros
+        for (int i = 0; i <= rowBytes; i++) {
+            previousRow[i] = 0;
+        }
+        int bytesPerPixel = Math.max(1, pixelBits / 8);
+
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+        for (int row = 0; row < height; row++) {
+            inflateRow(rowBytes + 1);
+            unfilter(currentRow, previousRow, rowBytes, bytesPerPixel);
+            if (row % sampleSize == 0 && row / sampleSize < outHeight) {
+                expandRow(currentRow, (row / sampleSize) * outWidth, sampleSize);
+            }
+            byte[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+        }
+    }
+
+    void release() {
+        inflater.end();
+    }
+
+    private void inflateRow(int length) throws DataFormatException {
+        int offset = 0;
+        while (offset < length) {
+            int count = inflater.inflate(currentRow, offset, length - offset);
+            offset += count;
+            if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Image data ended early");
+            }
+        }
+    }
+
+    private static void unfilter(byte[] row, byte[] prior, int rowBytes, int bpp) throws DataFormatException {
+        int filterType = row[0];
+        switch (filterType) {
+            case 0:
+                break;
+            case 1:
+                for (int i = 1 + bpp; i <= rowBytes; i++) {
+                    row[i] += row[i - bpp];
+                }
+                break;
+            case 2:
+                for (int i = 1; i <= rowBytes; i++) {
+                    row[i] += prior[i];
+                }
+                break;
+            case 3:
+                for (int i = 1; i <= bpp && i <= rowBytes; i++) {
+                    row[i] += (prior[i] & 0xff) >>> 1;
+                }
+                for (int i = 1 + bpp; i <= rowBytes; i++) {
+                    row[i] += ((row[i - bpp] & 0xff) + (prior[i] & 0xff)) >>> 1;
+                }
+                break;
+            case 4:
+                for (int i = 1; i <= bpp && i <= rowBytes; i++) {
+                    row[i] += prior[i];
+                }
+                for (int i = 1 + bpp; i <= rowBytes; i++) {
+                    int a = row[i - bpp] & 0xff;
+                    int b = prior[i] & 0xff;
+                    int c = prior[i - bpp] & 0xff;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a);
+                    int pb = Math.abs(p - b);
+                    int pc = Math.abs(p - c);
+                    if (pa <= pb && pa <= pc) {
+                        row[i] += a;
+                    } else if (pb <= pc) {
+                        row[i] += b;
+                    } else {
+                        row[i] += c;
+                    }
+                }
+                break;
+            default:
+                throw new DataFormatException("Unknown filter type " + filterType);
+        }
+    }
+
+    private void expandRow(byte[] row, int outOffset, int sampleSize) {
+        int[] out = pixels;
+        int end = outOffset + outWidth;
+        int x = 0;
+        switch (colorType) {
+            case COLOR_TYPE_RGBA:
+                if (bitDepth == 8) {
+                    for (int i = outOffset; i < end; i++, x += sampleSize) {
+                        int off = 1 + x * 4;
+                        out[i] = pack(row[off] & 0xff, row[off + 1] & 0xff, row[off + 2] & 0xff, row[off + 3] & 0xff);
+                    }
+                } else {
+                    for (int i = outOffset; i < end; i++, x += sampleSize) {
+                        int off = 1 + x * 8;
+                        out[i] = pack(row[off] & 0xff, row[off + 2] & 0xff, row[off + 4] & 0xff, row[off + 6] & 0xff);
+                    }
+                }
+                break;
+            case COLOR_TYPE_RGB:
+                for (int i = outOffset; i < end; i++, x += sampleSize) {
+                    int r, g, b, tr, tg, tb;
+                    if (bitDepth == 8) {
+                        int off = 1 + x * 3;
+                        r = tr = row[off] & 0xff;
+                        g = tg = row[off + 1] & 0xff;
+                        b = tb = row[off + 2] & 0xff;
+                    } else {
+                        int off = 1 + x * 6;
+                        r = row[off] & 0xff;
+                        g = row[off + 2] & 0xff;
+                        b = row[off + 4] & 0xff;
+                        tr = r << 8 | (row[off + 1] & 0xff);
+                        tg = g << 8 | (row[off + 3] & 0xff);
+                        tb = b << 8 | (row[off + 5] & 0xff);
+                    }
+                    if (tr == transparentRed && tg == transparentGreen && tb == transparentBlue) {
+                        out[i] = 0;
+                    } else {
+                        out[i] = 0xff000000 | b << 16 | g << 8 | r;
+                    }
+                }
+                break;
+            case COLOR_TYPE_GRAY_ALPHA:
+                if (bitDepth == 8) {
+                    for (int i = outOffset; i < end; i++, x += sampleSize) {
+                        int off = 1 + x * 2;
+                        int gray = row[off] & 0xff;
+                        out[i] = pack(gray, gray, gray, row[off + 1] & 0xff);
+                    }
+                } else {
+                    for (int i = outOffset; i < end; i++, x += sampleSize) {
+                        int off = 1 + x * 4;
+                        int gray = row[off] & 0xff;
+                        out[i] = pack(gray, gray, gray, row[off + 2] & 0xff);
+                    }
+                }
+                break;
+            case COLOR_TYPE_GRAY:
+                for (int i = outOffset; i < end; i++, x += sampleSize) {
+                    int sample;
+                    int gray;
+                    if (bitDepth == 16) {
+                        int off = 1 + x * 2;
+                        gray = row[off] & 0xff;
+                        sample = gray << 8 | (row[off + 1] & 0xff);
+                    } else {
+                        sample = readSample(row, x);
+                        gray = sample * 255 / ((1 << bitDepth) - 1);
+                    }
+                    out[i] = sample == transparentGray ? 0 : 0xff000000 | gray << 16 | gray << 8 | gray;
+                }
+                break;
+            case COLOR_TYPE_INDEXED:
+                for (int i = outOffset; i < end; i++, x += sampleSize) {
+                    out[i] = palette[readSample(row, x)];
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return sample x of a row with one channel of at most 8 bits
+     */
+    private int readSample(byte[] row, int x) {
+        if (bitDepth == 8) {
+            return row[1 + x] & 0xff;
+        }
+        int bit = x * bitDepth;
+        int shift = 8 - bitDepth - (bit & 7);
+        return ((row[1 + (bit >> 3)] & 0xff) >> shift) & ((1 << bitDepth) - 1);
+    }
+
+    /**
+     * Premultiply and pack into the compositor pixel layout
+     */
+    private static int pack(int r, int g, int b, int a) {
+        if (a == 0) {
+            return 0;
+        }
+        if (a != 0xff) {
+            r = (r * a + 127) / 255;
+            g = (g * a + 127) / 255;
+            b = (b * a + 127) / 255;
+        }
+        return a << 24 | b << 16 | g << 8 | r;
+    }
+}
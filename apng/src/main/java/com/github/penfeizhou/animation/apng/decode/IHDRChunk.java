@@ -37,4 +37,16 @@ class IHDRChunk extends Chunk {
         height = reader.readInt();
         reader.read(data, 0, data.length);
     }
+
+    int bitDepth() {
+        return data[0] & 0xff;
+    }
+
+    int colorType() {
+        return data[1] & 0xff;
+    }
+
+    boolean interlace() {
+        return data[4] != 0;
+    }
 }
@@ -0,0 +1,22 @@
+package com.github.penfeizhou.animation.apng.decode;
+
+import com.github.penfeizhou.animation.apng.io.APNGReader;
+
+import java.io.IOException;
+
+/**
+ * @Description: https://www.w3.org/TR/PNG/#11PLTE
+ */
+class PLTEChunk extends Chunk {
+    static final int ID = Chunk.fourCCToInt("PLTE");
+    /**
+     * Red, green, blue triplets, 3 bytes per entry
+     */
+    byte[] data;
+
+    @Override
+    void innerParse(APNGReader reader) throws IOException {
+        data = new byte[length];
+        reader.read(data, 0, length);
+    }
+}
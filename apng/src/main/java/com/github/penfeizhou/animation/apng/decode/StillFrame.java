@@ -22,27 +22,35 @@ public class StillFrame extends Frame<APNGReader, APNGWriter> {
         super(reader);
     }
 
-    @Override
-    public Bitmap draw(Canvas canvas, Paint paint, int sampleSize, Bitmap reusedBitmap, APNGWriter writer) {
+    /**
+     * Decode the whole image into a bitmap without drawing it anywhere
+     */
+    Bitmap decode(int sampleSize, Bitmap reusedBitmap) throws IOException {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = false;
         options.inSampleSize = sampleSize;
         options.inMutable = true;
         options.inBitmap = reusedBitmap;
-        Bitmap bitmap = null;
+        Bitmap bitmap;
+        reader.reset();
         try {
-            reader.reset();
+            bitmap = BitmapFactory.decodeStream(reader.toInputStream(), null, options);
+        } catch (IllegalArgumentException e) {
+            // Problem decoding into existing bitmap when on Android 4.2.2 & 4.3
+            BitmapFactory.Options optionsFixed = new BitmapFactory.Options();
+            optionsFixed.inJustDecodeBounds = false;
+            optionsFixed.inSampleSize = sampleSize;
+            optionsFixed.inMutable = true;
+            bitmap = BitmapFactory.decodeStream(reader.toInputStream(), null, optionsFixed);
+        }
+        return bitmap;
+    }
 
-            try {
-                bitmap = BitmapFactory.decodeStream(reader.toInputStream(), null, options);
-            } catch (IllegalArgumentException e) {
-                // Problem decoding into existing bitmap when on Android 4.2.2 & 4.3
-                BitmapFactory.Options optionsFixed = new BitmapFactory.Options();
-                optionsFixed.inJustDecodeBounds = false;
-                optionsFixed.inSampleSize = sampleSize;
-                optionsFixed.inMutable = true;
-                bitmap = BitmapFactory.decodeStream(reader.toInputStream(), null, optionsFixed);
-            }
+    @Override
+    public Bitmap draw(Canvas canvas, Paint paint, int sampleSize, Bitmap reusedBitmap, APNGWriter writer) {
+        Bitmap bitmap = null;
+        try {
+            bitmap = decode(sampleSize, reusedBitmap);
             assert bitmap != null;
             paint.setXfermode(null);
             canvas.drawBitmap(bitmap, 0, 0, paint);
@@ -0,0 +1,20 @@
+package com.github.penfeizhou.animation.apng.decode;
+
+import com.github.penfeizhou.animation.apng.io.APNGReader;
+
+import java.io.IOException;
+
+/**
+ * @Description: https://www.w3.org/TR/PNG/#11tRNS
+ * Palette alpha values for indexed images, or the single transparent gray / RGB sample otherwise.
+ */
+class TRNSChunk extends Chunk {
+    static final int ID = Chunk.fourCCToInt("tRNS");
+    byte[] data;
+
+    @Override
+    void innerParse(APNGReader reader) throws IOException {
+        data = new byte[length];
+        reader.read(data, 0, length);
+    }
+}
@@ -30,12 +30,7 @@ public class APNGReader extends FilterReader {
     }
 
     public int readInt() throws IOException {
-        byte[] buf = ensureBytes();
-        read(buf, 0, 4);
-        return buf[3] & 0xFF |
-                (buf[2] & 0xFF) << 8 |
-                (buf[1] & 0xFF) << 16 |
-                (buf[0] & 0xFF) << 24;
+        return readIntBE();
     }
 
     public short readShort() throws IOException {
@@ -62,8 +57,6 @@ public class APNGReader extends FilterReader {
     }
 
     public int readFourCC() throws IOException {
-        byte[] buf = ensureBytes();
-        read(buf, 0, 4);
-        return buf[0] & 0xff | (buf[1] & 0xff) << 8 | (buf[2] & 0xff) << 16 | (buf[3] & 0xff) << 24;
+        return readIntLE();
     }
 }
@@ -0,0 +1,119 @@
+package com.github.penfeizhou.animation.apng.decode;
+
+import com.github.penfeizhou.animation.apng.io.APNGReader;
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of {@link APNGParser#parse(APNGReader, ChunkTable)} against building one Chunk
+ * object per chunk, which is how the parser worked before the table was introduced.
+ * The gc profiler reports the allocation per parse next to the time.
+ * Skipped unless run with -Pbenchmark=true, e.g.
+ * ./gradlew :apng:testDebugUnitTest -Pbenchmark=true --tests '*APNGChunkParseBenchmark'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class APNGChunkParseBenchmark {
+    @Param({"50", "400"})
+    public int frameCount;
+
+    private APNGReader reader;
+
+    @BeforeClass
+    public static void checkEnabled() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(APNGChunkParseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] data = APNGParseBenchmark.buildAPNG(frameCount, 4, 1024);
+        reader = new APNGReader(new ByteBufferReader(ByteBuffer.wrap(data)));
+    }
+
+    @Benchmark
+    public int chunkTable() throws IOException {
+        reader.reset();
+        ChunkTable table = new ChunkTable();
+        return APNGParser.parse(reader, table).size() + table.size();
+    }
+
+    @Benchmark
+    public int chunkObjects() throws IOException {
+        reader.reset();
+        return parseChunkObjects(reader).size();
+    }
+
+    /**
+     * Every chunk, image data included, becomes an object kept in the list
+     */
+    private static List<Chunk> parseChunkObjects(APNGReader reader) throws IOException {
+        if (!reader.matchFourCC("\u0089PNG") || !reader.matchFourCC("\r\n\u001a\n")) {
+            throw new APNGParser.FormatException();
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        while (reader.available() > 0) {
+            int offset = reader.position();
+            int size = reader.readInt();
+            int fourCC = reader.readFourCC();
+            Chunk chunk;
+            if (fourCC == ACTLChunk.ID) {
+                chunk = new ACTLChunk();
+            } else if (fourCC == FCTLChunk.ID) {
+                chunk = new FCTLChunk();
+            } else if (fourCC == FDATChunk.ID) {
+                chunk = new FDATChunk();
+            } else if (fourCC == IDATChunk.ID) {
+                chunk = new IDATChunk();
+            } else if (fourCC == IENDChunk.ID) {
+                chunk = new IENDChunk();
+            } else if (fourCC == IHDRChunk.ID) {
+                chunk = new IHDRChunk();
+            } else {
+                chunk = new Chunk();
+            }
+            chunk.offset = offset;
+            chunk.fourcc = fourCC;
+            chunk.length = size;
+            chunk.parse(reader);
+            chunk.crc = reader.readInt();
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.penfeizhou.animation.apng.decode;
+
+import com.github.penfeizhou.animation.apng.io.APNGReader;
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+import com.github.penfeizhou.animation.io.FileReader;
+import com.github.penfeizhou.animation.io.Reader;
+import com.github.penfeizhou.animation.io.StreamReader;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parse throughput of an APNG with many frames over each kind of reader.
+ * Skipped unless run with -Pbenchmark=true, e.g.
+ * ./gradlew :apng:testDebugUnitTest -Pbenchmark=true --tests '*APNGParseBenchmark'
+ */
+public class APNGParseBenchmark {
+    private static final int FRAME_COUNT = 400;
+    private static final int FDAT_PER_FRAME = 4;
+    private static final int FDAT_SIZE = 1024;
+    private static final long RUN_NANOS = 2_000_000_000L;
+
+    private interface ReaderFactory {
+        Reader create() throws IOException;
+    }
+
+    @BeforeClass
+    public static void checkEnabled() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void streamReader() throws IOException {
+        final byte[] data = buildAPNG(FRAME_COUNT, FDAT_PER_FRAME, FDAT_SIZE);
+        run("StreamReader", data.length, new ReaderFactory() {
+            @Override
+            public Reader create() {
+                return new StreamReader(new ByteArrayInputStream(data));
+            }
+        });
+    }
+
+    @Test
+    public void fileReader() throws IOException {
+        byte[] data = buildAPNG(FRAME_COUNT, FDAT_PER_FRAME, FDAT_SIZE);
+        final File file = File.createTempFile("bench", ".png");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data);
+        out.close();
+        run("FileReader", data.length, new ReaderFactory() {
+            @Override
+            public Reader create() throws IOException {
+                return new FileReader(file);
+            }
+        });
+    }
+
+    @Test
+    public void byteBufferReader() throws IOException {
+        final byte[] data = buildAPNG(FRAME_COUNT, FDAT_PER_FRAME, FDAT_SIZE);
+        run("ByteBufferReader", data.length, new ReaderFactory() {
+            @Override
+            public Reader create() {
+                return new ByteBufferReader(ByteBuffer.wrap(data));
+            }
+        });
+    }
+
+    private static void run(String name, int fileSize, ReaderFactory factory) throws IOException {
+        // warm up for a quarter of the run, then measure
+        measure(factory, RUN_NANOS / 4);
+        long[] result = measure(factory, RUN_NANOS);
+        double seconds = result[1] / 1e9;
+        System.out.printf("%-20s %8.1f parses/s %8.1f MB/s%n", name,
+                result[0] / seconds, result[0] * (double) fileSize / seconds / (1 << 20));
+    }
+
+    /**
+     * @return parse count and elapsed nanos
+     */
+    private static long[] measure(ReaderFactory factory, long nanos) throws IOException {
+        long start = System.nanoTime();
+        long count = 0;
+        long elapsed;
+        int sink = 0;
+        // one reader rewound between parses, as a decoder does when it is restarted
+        Reader reader = factory.create();
+        try {
+            do {
+                reader.reset();
+                ChunkTable table = new ChunkTable();
+                APNGParser.parse(new APNGReader(reader), table);
+                sink += table.size();
+                count++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < nanos);
+        } finally {
+            reader.close();
+        }
+        if (sink == 0) {
+            throw new AssertionError("nothing parsed");
+        }
+        return new long[]{count, elapsed};
+    }
+
+    /**
+     * An APNG whose frames are split into fdatPerFrame chunks, the image data is not valid zlib,
+     * which the parser never looks at
+     */
+    static byte[] buildAPNG(int frameCount, int fdatPerFrame, int fdatSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        writeChunk(out, "IHDR", new byte[]{0, 0, 1, 0, 0, 0, 1, 0, 8, 6, 0, 0, 0});
+        ByteBuffer actl = ByteBuffer.allocate(8);
+        actl.putInt(frameCount).putInt(0);
+        writeChunk(out, "acTL", actl.array());
+        int sequence = 0;
+        for (int frame = 0; frame < frameCount; frame++) {
+            ByteBuffer fctl = ByteBuffer.allocate(26);
+            fctl.putInt(sequence++).putInt(256).putInt(256).putInt(0).putInt(0)
+                    .putShort((short) 1).putShort((short) 10).put((byte) 0).put((byte) 0);
+            writeChunk(out, "fcTL", fctl.array());
+            for (int i = 0; i < fdatPerFrame; i++) {
+                byte[] fdat = new byte[4 + fdatSize];
+                ByteBuffer.wrap(fdat).putInt(sequence++);
+                writeChunk(out, frame == 0 ? "IDAT" : "fdAT", frame == 0 ? new byte[fdatSize] : fdat);
+            }
+        }
+        writeChunk(out, "IEND", new byte[0]);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeChunk(DataOutputStream out, String fourcc, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(fourcc.getBytes(StandardCharsets.US_ASCII));
+        out.write(data);
+        // the parser does not check crc
+        out.writeInt(0);
+    }
+}
@@ -0,0 +1,176 @@
+package com.github.penfeizhou.animation.apng.decode;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameInflaterTest {
+    private static final int GRAY = 0;
+    private static final int RGB = 2;
+    private static final int INDEXED = 3;
+    private static final int RGBA = 6;
+
+    @Test
+    public void isSupported_rejectsInterlacedAndOddDepths() {
+        assertTrue(FrameInflater.isSupported(ihdr(8, RGBA)));
+        assertTrue(FrameInflater.isSupported(ihdr(2, INDEXED)));
+        assertFalse(FrameInflater.isSupported(ihdr(4, RGB)));
+        assertFalse(FrameInflater.isSupported(ihdr(16, INDEXED)));
+        IHDRChunk interlaced = ihdr(8, RGBA);
+        interlaced.data[4] = 1;
+        assertFalse(FrameInflater.isSupported(interlaced));
+    }
+
+    @Test
+    public void rgba8_reversesEveryFilterType() throws DataFormatException {
+        int width = 3;
+        byte[][] rows = new byte[5][];
+        for (int y = 0; y < rows.length; y++) {
+            rows[y] = new byte[width * 4];
+            for (int i = 0; i < rows[y].length; i++) {
+                rows[y][i] = (byte) (y * 53 + i * 29 + (i % 4 == 3 ? 0xff : 0));
+            }
+            // keep the pixels opaque so the expected values need no premultiplying
+            for (int x = 0; x < width; x++) {
+                rows[y][x * 4 + 3] = (byte) 0xff;
+            }
+        }
+        FrameInflater inflater = new FrameInflater(ihdr(8, RGBA), null, null);
+        byte[] data = compress(rows, new int[]{0, 1, 2, 3, 4}, 4);
+        inflater.decode(data, 0, data.length, width, rows.length, 1);
+        int[] expected = new int[width * rows.length];
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < width; x++) {
+                byte[] row = rows[y];
+                expected[y * width + x] = 0xff000000 | (row[x * 4 + 2] & 0xff) << 16
+                        | (row[x * 4 + 1] & 0xff) << 8 | (row[x * 4] & 0xff);
+            }
+        }
+        assertArrayEquals(expected, Arrays.copyOf(inflater.getPixels(), expected.length));
+        inflater.release();
+    }
+
+    @Test
+    public void rgba8_premultipliesAlpha() throws DataFormatException {
+        FrameInflater inflater = new FrameInflater(ihdr(8, RGBA), null, null);
+        byte[] data = compress(new byte[][]{{(byte) 0xff, 0x40, 0, (byte) 0x80, 0, 0, 0, 0}}, new int[]{0}, 4);
+        inflater.decode(data, 0, data.length, 2, 1, 1);
+        assertEquals(0x80002080, inflater.getPixels()[0]);
+        assertEquals(0, inflater.getPixels()[1]);
+    }
+
+    @Test
+    public void indexed1_usesPaletteAndTrns() throws DataFormatException {
+        PLTEChunk plte = new PLTEChunk();
+        plte.data = new byte[]{0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+        TRNSChunk trns = new TRNSChunk();
+        trns.data = new byte[]{0};
+        FrameInflater inflater = new FrameInflater(ihdr(1, INDEXED), plte, trns);
+        // 10 pixels: 0110 0000 01
+        byte[] data = compress(new byte[][]{{0x60, 0x40}}, new int[]{0}, 1);
+        inflater.decode(data, 0, data.length, 10, 1, 1);
+        int on = 0xff665544;
+        assertArrayEquals(new int[]{0, on, on, 0, 0, 0, 0, 0, 0, on},
+                Arrays.copyOf(inflater.getPixels(), 10));
+    }
+
+    @Test
+    public void gray16_matchesTransparentSample() throws DataFormatException {
+        TRNSChunk trns = new TRNSChunk();
+        trns.data = new byte[]{0x12, 0x34};
+        FrameInflater inflater = new FrameInflater(ihdr(16, GRAY), null, trns);
+        byte[] data = compress(new byte[][]{{0x12, 0x34, 0x12, 0x35}}, new int[]{0}, 2);
+        inflater.decode(data, 0, data.length, 2, 1, 1);
+        assertEquals(0, inflater.getPixels()[0]);
+        assertEquals(0xff121212, inflater.getPixels()[1]);
+    }
+
+    @Test
+    public void rgb8_sampleSize2_keepsEveryOtherPixelAndRow() throws DataFormatException {
+        int width = 5;
+        int height = 4;
+        byte[][] rows = new byte[height][width * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                rows[y][x * 3] = (byte) (y * 10 + x);
+            }
+        }
+        FrameInflater inflater = new FrameInflater(ihdr(8, RGB), null, null);
+        byte[] data = compress(rows, new int[]{1, 2, 3, 4}, 3);
+        inflater.decode(data, 0, data.length, width, height, 2);
+        assertEquals(2, inflater.getWidth());
+        assertEquals(2, inflater.getHeight());
+        assertArrayEquals(new int[]{0xff000000, 0xff000002, 0xff000014, 0xff000016},
+                Arrays.copyOf(inflater.getPixels(), 4));
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void truncatedData_throws() throws DataFormatException {
+        FrameInflater inflater = new FrameInflater(ihdr(8, RGBA), null, null);
+        byte[] data = compress(new byte[][]{new byte[8], new byte[8]}, new int[]{0}, 4);
+        inflater.decode(data, 0, data.length / 2, 2, 2, 1);
+    }
+
+    private static IHDRChunk ihdr(int bitDepth, int colorType) {
+        IHDRChunk ihdr = new IHDRChunk();
+        ihdr.data = new byte[]{(byte) bitDepth, (byte) colorType, 0, 0, 0};
+        return ihdr;
+    }
+
+    /**
+     * Filter each row with filterTypes[row % length] and deflate the result
+     */
+    private static byte[] compress(byte[][] rows, int[] filterTypes, int bpp) {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        byte[] prior = new byte[rows[0].length];
+        for (int y = 0; y < rows.length; y++) {
+            int type = filterTypes[y % filterTypes.length];
+            byte[] row = rows[y];
+            raw.write(type);
+            for (int i = 0; i < row.length; i++) {
+                int a = i >= bpp ? row[i - bpp] & 0xff : 0;
+                int b = prior[i] & 0xff;
+                int c = i >= bpp ? prior[i - bpp] & 0xff : 0;
+                int predictor;
+                switch (type) {
+                    case 1:
+                        predictor = a;
+                        break;
+                    case 2:
+                        predictor = b;
+                        break;
+                    case 3:
+                        predictor = (a + b) >>> 1;
+                        break;
+                    case 4:
+                        int p = a + b - c;
+                        int pa = Math.abs(p - a);
+                        int pb = Math.abs(p - b);
+                        int pc = Math.abs(p - c);
+                        predictor = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                        break;
+                    default:
+                        predictor = 0;
+                        break;
+                }
+                raw.write((row[i] - predictor) & 0xff);
+            }
+            prior = row;
+        }
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw.toByteArray());
+        deflater.finish();
+        byte[] out = new byte[raw.size() + 64];
+        int length = deflater.deflate(out);
+        deflater.end();
+        return Arrays.copyOf(out, length);
+    }
+}
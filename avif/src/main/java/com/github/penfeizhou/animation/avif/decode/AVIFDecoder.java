@@ -88,6 +88,20 @@ public class AVIFDecoder extends FrameSeqDecoder<AVIFReader, AVIFWriter> {
         return bitmap;
     }
 
+    /**
+     * libavif scales the frame to the bitmap size, so the poster is decoded straight at the sampled
+     * size without the canvas buffer, and the native decoder is released by getFirstFrameBitmap
+     */
+    @Override
+    protected Bitmap renderFirstFrame(BitmapProvider provider, int width, int height) {
+        if (avifDecoder == null || avifDecoder.getFrameCount() == 0) {
+            return null;
+        }
+        Bitmap bitmap = provider.obtain(width, height);
+        avifDecoder.nthFrame(0, bitmap);
+        return bitmap;
+    }
+
     @Override
     public Frame<AVIFReader, AVIFWriter> getFrame(int index) {
         AVIFFrame avifFrame = new AVIFFrame(null);
@@ -19,3 +19,4 @@
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
 #-renamesourcefileattribute SourceFile
+-keep class com.github.penfeizhou.animation.webp.decode.NativeFrameDecoder {*;}
@@ -0,0 +1,136 @@
+#include <jni.h>
+#include <stdint.h>
+
+#include "common.h"
+
+#include <webp/decode.h>
+
+#define NATIVE_DECODER_CLASS_PATH "com/github/penfeizhou/animation/webp/decode/NativeFrameDecoder"
+
+/**
+ * Decode a WebP bitstream, a RIFF file or the ALPH + VP8 / VP8L chunks of an ANMF frame,
+ * into width x height premultiplied pixels. libwebp scales when the size differs from the image.
+ */
+static bool decodeFrame(const uint8_t *data, size_t length, uint32_t *pixels, int width, int height,
+                        bool useThreads) {
+    WebPDecoderConfig config;
+    if (!WebPInitDecoderConfig(&config)) {
+        return false;
+    }
+    if (WebPGetFeatures(data, length, &config.input) != VP8_STATUS_OK) {
+        LOGE("Invalid frame data");
+        return false;
+    }
+    if (config.input.width != width || config.input.height != height) {
+        config.options.use_scaling = 1;
+        config.options.scaled_width = width;
+        config.options.scaled_height = height;
+    }
+    config.options.use_threads = useThreads ? 1 : 0;
+    // rgbA is premultiplied RGBA in memory, the pixel layout of FrameCompositor
+    config.output.colorspace = MODE_rgbA;
+    config.output.is_external_memory = 1;
+    config.output.u.RGBA.rgba = reinterpret_cast<uint8_t *>(pixels);
+    config.output.u.RGBA.stride = width * (int) sizeof(uint32_t);
+    config.output.u.RGBA.size = (size_t) width * height * sizeof(uint32_t);
+    VP8StatusCode status = WebPDecode(data, length, &config);
+    WebPFreeDecBuffer(&config.output);
+    if (status != VP8_STATUS_OK) {
+        LOGE("WebPDecode failed %d", status);
+        return false;
+    }
+    return true;
+}
+
+/**
+ * Decode length bytes of data into the pixel array, which is held until the decode is done.
+ * Only critical array access happens here.
+ */
+static jboolean decodeInto(JNIEnv *env, const uint8_t *data, jint length, jintArray pixels,
+                           jint width, jint height, jboolean useThreads) {
+    auto *dst = static_cast<uint32_t *>(env->GetPrimitiveArrayCritical(pixels, nullptr));
+    if (dst == nullptr) {
+        return JNI_FALSE;
+    }
+    bool ok = decodeFrame(data, (size_t) length, dst, width, height, useThreads);
+    env->ReleasePrimitiveArrayCritical(pixels, dst, ok ? 0 : JNI_ABORT);
+    return ok ? JNI_TRUE : JNI_FALSE;
+}
+
+static bool checkPixels(JNIEnv *env, jintArray pixels, jint width, jint height) {
+    if (width <= 0 || height <= 0 || (jlong) width * height > env->GetArrayLength(pixels)) {
+        LOGE("Pixel array too small");
+        return false;
+    }
+    return true;
+}
+
+static jboolean decodeArray(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jbyteArray data,
+        jint offset,
+        jint length,
+        jintArray pixels,
+        jint width,
+        jint height,
+        jboolean useThreads) {
+    jsize dataLength = env->GetArrayLength(data);
+    if (offset < 0 || length <= 0 || offset >= dataLength || !checkPixels(env, pixels, width, height)) {
+        return JNI_FALSE;
+    }
+    if (length > dataLength - offset) {
+        length = dataLength - offset;
+    }
+    // No other JNI calls may happen while the arrays are held
+    auto *bytes = static_cast<uint8_t *>(env->GetPrimitiveArrayCritical(data, nullptr));
+    if (bytes == nullptr) {
+        return JNI_FALSE;
+    }
+    jboolean ok = decodeInto(env, bytes + offset, length, pixels, width, height, useThreads);
+    env->ReleasePrimitiveArrayCritical(data, bytes, JNI_ABORT);
+    return ok;
+}
+
+static jboolean decodeBuffer(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jobject data,
+        jint offset,
+        jint length,
+        jintArray pixels,
+        jint width,
+        jint height,
+        jboolean useThreads) {
+    auto *bytes = static_cast<uint8_t *>(env->GetDirectBufferAddress(data));
+    jlong capacity = env->GetDirectBufferCapacity(data);
+    if (bytes == nullptr || offset < 0 || length <= 0 || offset >= capacity
+        || !checkPixels(env, pixels, width, height)) {
+        return JNI_FALSE;
+    }
+    if (length > capacity - offset) {
+        length = (jint) (capacity - offset);
+    }
+    // Direct and mapped buffers are decoded in place, no copy to the Java heap
+    return decodeInto(env, bytes + offset, length, pixels, width, height, useThreads);
+}
+
+static JNINativeMethod methods[] = {
+        {"decode", "([BII[IIIZ)Z",                   (void *) &decodeArray},
+        {"decode", "(Ljava/nio/ByteBuffer;II[IIIZ)Z", (void *) &decodeBuffer},
+};
+
+jint JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env;
+    if (vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) != JNI_OK) {
+        return -1;
+    }
+    jclass clazz = env->FindClass(NATIVE_DECODER_CLASS_PATH);
+    if (clazz == nullptr) {
+        return -1;
+    }
+    if (env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0])) < 0) {
+        return -1;
+    }
+    return JNI_VERSION_1_6;
+}
@@ -7,11 +7,13 @@ import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 
+import com.github.penfeizhou.animation.decode.EncodedFrameCache;
 import com.github.penfeizhou.animation.decode.Frame;
 import com.github.penfeizhou.animation.webp.io.WebPReader;
 import com.github.penfeizhou.animation.webp.io.WebPWriter;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * @Description: AnimationFrame
@@ -26,6 +28,8 @@ public class AnimationFrame extends Frame<WebPReader, WebPWriter> {
     private final boolean useAlpha;
     private static final PorterDuffXfermode PORTERDUFF_XFERMODE_SRC_OVER = new PorterDuffXfermode(PorterDuff.Mode.SRC_OVER);
     private static final PorterDuffXfermode PORTERDUFF_XFERMODE_SRC = new PorterDuffXfermode(PorterDuff.Mode.SRC);
+    // Smaller frames gain nothing from libwebp's filtering thread
+    private static final int THREADED_DECODE_PIXELS = 256 * 256;
 
     public AnimationFrame(WebPReader reader, ANMFChunk anmfChunk) {
         super(reader);
@@ -44,13 +48,26 @@ public class AnimationFrame extends Frame<WebPReader, WebPWriter> {
         this.useAlpha = anmfChunk.alphChunk != null;
     }
 
+    /**
+     * Switch the libwebp frame decoder on or off, it is only used when animation-decoder-webp
+     * is packaged. BitmapFactory decodes the frames otherwise.
+     */
+    public static void setNativeDecoderEnabled(boolean enabled) {
+        NativeFrameDecoder.setEnabled(enabled);
+    }
+
+    public static boolean isNativeDecoderEnabled() {
+        return NativeFrameDecoder.isEnabled();
+    }
+
     private int encode(WebPWriter writer) {
         int vp8xPayloadSize = 10;
         int size = 12 + (BaseChunk.CHUNCK_HEADER_OFFSET + vp8xPayloadSize) + this.imagePayloadSize;
         writer.reset(size);
         // Webp Header
         writer.putFourCC("RIFF");
-        writer.putUInt32(size);
+        // RIFF size excludes the "RIFF" tag and the size field, libwebp rejects a larger one
+        writer.putUInt32(size - 8);
         writer.putFourCC("WEBP");
 
         //VP8X
@@ -63,23 +80,43 @@ public class AnimationFrame extends Frame<WebPReader, WebPWriter> {
 
         //ImageData
         try {
-            reader.reset();
-            reader.skip(this.imagePayloadOffset);
-            reader.read(writer.toByteArray(), writer.position(), this.imagePayloadSize);
+            reader.read(this.imagePayloadOffset, writer.toByteArray(), writer.position(), this.imagePayloadSize);
         } catch (IOException e) {
             e.printStackTrace();
         }
         return size;
     }
 
-    public Bitmap draw(Canvas canvas, Paint paint, int sampleSize, Bitmap reusedBitmap, WebPWriter writer) {
+    /**
+     * Decode this frame into a bitmap without drawing it anywhere
+     */
+    Bitmap decode(int sampleSize, Bitmap reusedBitmap, WebPWriter writer) {
+        return decode(sampleSize, reusedBitmap, writer, null, 0);
+    }
+
+    /**
+     * Decode this frame into a bitmap, taking the rebuilt RIFF from cache when present
+     *
+     * @param cache may be null
+     * @param index frame index used as cache key
+     */
+    Bitmap decode(int sampleSize, Bitmap reusedBitmap, WebPWriter writer, EncodedFrameCache cache, int index) {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = false;
         options.inSampleSize = sampleSize;
         options.inMutable = true;
         options.inBitmap = reusedBitmap;
-        int length = encode(writer);
-        byte[] bytes = writer.toByteArray();
+        byte[] bytes = cache == null ? null : cache.get(index);
+        int length;
+        if (bytes == null) {
+            length = encode(writer);
+            bytes = writer.toByteArray();
+            if (cache != null) {
+                bytes = cache.put(index, bytes, length);
+            }
+        } else {
+            length = bytes.length;
+        }
         Bitmap bitmap;
         try {
             bitmap = BitmapFactory.decodeByteArray(bytes, 0, length, options);
@@ -91,6 +128,49 @@ public class AnimationFrame extends Frame<WebPReader, WebPWriter> {
             optionsFixed.inMutable = true;
             bitmap = BitmapFactory.decodeByteArray(bytes, 0, length, optionsFixed);
         }
+        return bitmap;
+    }
+
+    /**
+     * Decode this frame with libwebp into width x height pixels in compositor layout.
+     * The image chunks are read in place when the reader holds the whole file in a buffer,
+     * otherwise the RIFF rebuilt for BitmapFactory is decoded, sharing its cache entries.
+     *
+     * @param cache may be null
+     * @param index frame index used as cache key
+     * @return false if the native decoder is unavailable or failed
+     */
+    boolean decode(int[] pixels, int width, int height, WebPWriter writer, EncodedFrameCache cache, int index) {
+        if (!NativeFrameDecoder.isEnabled()) {
+            return false;
+        }
+        boolean useThreads = width * height >= THREADED_DECODE_PIXELS;
+        ByteBuffer buffer = reader.getByteBuffer();
+        if (buffer != null && (buffer.isDirect() || buffer.hasArray())) {
+            int length = Math.min(imagePayloadSize, buffer.limit() - imagePayloadOffset);
+            if (buffer.isDirect()) {
+                return NativeFrameDecoder.decode(buffer, imagePayloadOffset, length,
+                        pixels, width, height, useThreads);
+            }
+            return NativeFrameDecoder.decode(buffer.array(), buffer.arrayOffset() + imagePayloadOffset, length,
+                    pixels, width, height, useThreads);
+        }
+        byte[] bytes = cache == null ? null : cache.get(index);
+        int length;
+        if (bytes == null) {
+            length = encode(writer);
+            bytes = writer.toByteArray();
+            if (cache != null) {
+                bytes = cache.put(index, bytes, length);
+            }
+        } else {
+            length = bytes.length;
+        }
+        return NativeFrameDecoder.decode(bytes, 0, length, pixels, width, height, useThreads);
+    }
+
+    public Bitmap draw(Canvas canvas, Paint paint, int sampleSize, Bitmap reusedBitmap, WebPWriter writer) {
+        Bitmap bitmap = decode(sampleSize, reusedBitmap, writer);
         if (bitmap != null) {
             if (blendingMethod) {
                 paint.setXfermode(PORTERDUFF_XFERMODE_SRC);
@@ -0,0 +1,55 @@
+package com.github.penfeizhou.animation.webp.decode;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @Description: libwebp backed decoder of animation frames, built as the optional
+ * animation-decoder-webp library. Frames are decoded straight from the loaded data into pixels
+ * in {@link com.github.penfeizhou.animation.decode.FrameCompositor} layout, without rebuilding
+ * a RIFF file for BitmapFactory. When the library is missing the BitmapFactory path is used.
+ */
+class NativeFrameDecoder {
+    private static final String TAG = "NativeFrameDecoder";
+    private static final boolean sLoaded = loadNativeLibrary();
+    private static volatile boolean sEnabled = true;
+
+    private NativeFrameDecoder() {
+    }
+
+    private static boolean loadNativeLibrary() {
+        try {
+            System.loadLibrary("animation-decoder-webp");
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            // 未集成libwebp时不会打包该库，属于正常情况
+            Log.i(TAG, "animation-decoder-webp not available, using BitmapFactory");
+            return false;
+        }
+    }
+
+    static boolean isEnabled() {
+        return sLoaded && sEnabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Decode a WebP bitstream, a RIFF file or the image chunks of an ANMF frame, into
+     * width x height premultiplied pixels, scaling when the image has another size
+     *
+     * @param useThreads let libwebp filter on a second thread
+     * @return false if the data could not be decoded
+     */
+    static native boolean decode(byte[] data, int offset, int length,
+                                 int[] pixels, int width, int height, boolean useThreads);
+
+    /**
+     * Same as above, decoding a direct or mapped buffer in place
+     */
+    static native boolean decode(ByteBuffer data, int offset, int length,
+                                 int[] pixels, int width, int height, boolean useThreads);
+}
@@ -28,7 +28,7 @@ public class VP8XChunk extends BaseChunk {
      * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
      */
 
-    private static final int FLAG_ANIMATION = 0x2;
+    static final int FLAG_ANIMATION = 0x2;
     private static final int FLAG_ALPHA = 0x10;
     /**
      * Reserved (Rsv): 2 bits
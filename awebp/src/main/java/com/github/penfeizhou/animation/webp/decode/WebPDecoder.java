@@ -2,14 +2,11 @@ package com.github.penfeizhou.animation.webp.decode;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 
 import com.github.penfeizhou.animation.decode.Frame;
+import com.github.penfeizhou.animation.decode.FrameCompositor;
 import com.github.penfeizhou.animation.decode.FrameSeqDecoder;
 import com.github.penfeizhou.animation.io.Reader;
 import com.github.penfeizhou.animation.loader.Loader;
@@ -26,8 +23,6 @@ import java.util.List;
  */
 public class WebPDecoder extends FrameSeqDecoder<WebPReader, WebPWriter> {
     private static final String TAG = WebPDecoder.class.getSimpleName();
-    private final Paint mTransparentFillPaint;
-    private Paint paint;
     private int loopCount;
 
     private int canvasWidth;
@@ -42,10 +37,6 @@ public class WebPDecoder extends FrameSeqDecoder<WebPReader, WebPWriter> {
      */
     public WebPDecoder(Loader loader, RenderListener renderListener) {
         super(loader, renderListener);
-        mTransparentFillPaint = new Paint();
-        mTransparentFillPaint.setColor(Color.TRANSPARENT);
-        mTransparentFillPaint.setStyle(Paint.Style.FILL);
-        mTransparentFillPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
     }
 
     @Override
@@ -73,7 +64,32 @@ public class WebPDecoder extends FrameSeqDecoder<WebPReader, WebPWriter> {
 
     @Override
     protected Rect read(WebPReader reader) throws IOException {
-        List<BaseChunk> chunks = WebPParser.parse(reader);
+        return read(reader, Integer.MAX_VALUE);
+    }
+
+    @Override
+    protected Rect readFirstFrame(WebPReader reader) throws IOException {
+        return read(reader, 1);
+    }
+
+    @Override
+    protected Rect readBounds(WebPReader reader) throws IOException {
+        // 动图的第一个chunk是VP8X，其中带有画布大小；简单格式的静态图由完整解析处理
+        if (!reader.matchFourCC("RIFF")) {
+            return null;
+        }
+        reader.skip(4);
+        if (!reader.matchFourCC("WEBP") || !reader.matchFourCC("VP8X")) {
+            return null;
+        }
+        reader.skip(4);
+        VP8XChunk chunk = new VP8XChunk();
+        chunk.innerParse(reader);
+        return new Rect(0, 0, chunk.canvasWidth, chunk.canvasHeight);
+    }
+
+    private Rect read(WebPReader reader, int frameLimit) throws IOException {
+        List<BaseChunk> chunks = WebPParser.parse(reader, frameLimit);
         boolean anim = false;
         boolean vp8x = false;
         for (BaseChunk chunk : chunks) {
@@ -102,11 +118,6 @@ public class WebPDecoder extends FrameSeqDecoder<WebPReader, WebPWriter> {
             frames.add(new StillFrame(reader, canvasWidth, canvasHeight));
             this.loopCount = 1;
         }
-        paint = new Paint();
-        paint.setAntiAlias(true);
-        if (!this.alpha) {
-            mTransparentFillPaint.setColor(backgroundColor);
-        }
         return new Rect(0, 0, canvasWidth, canvasHeight);
     }
 
@@ -118,45 +129,68 @@ public class WebPDecoder extends FrameSeqDecoder<WebPReader, WebPWriter> {
         if (fullRect.width() <= 0 || fullRect.height() <= 0) {
             return;
         }
-        Bitmap bitmap = obtainBitmap(fullRect.width() / sampleSize, fullRect.height() / sampleSize);
-        if (bitmap == null) {
-            return;
-        }
-        Canvas canvas = cachedCanvas.get(bitmap);
-        if (canvas == null) {
-            canvas = new Canvas(bitmap);
-            cachedCanvas.put(bitmap, canvas);
-        }
-        // 从缓存中恢复当前帧
-        frameBuffer.rewind();
-        bitmap.copyPixelsFromBuffer(frameBuffer);
-
+        FrameCompositor compositor = obtainCompositor();
+        int background = this.alpha ? Color.TRANSPARENT : FrameCompositor.colorToPixel(backgroundColor);
         if (this.frameIndex == 0) {
-            if (this.alpha) {
-                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.SRC);
-            } else {
-                canvas.drawColor(backgroundColor, PorterDuff.Mode.SRC);
-            }
+            compositor.clear(background);
         } else {
-            Frame<WebPReader, WebPWriter> preFrame = frames.get(this.frameIndex - 1);
-            //Dispose to background color. Fill the rectangle on the canvas covered by the current frame with background color specified in the ANIM chunk.
-            if (preFrame instanceof AnimationFrame
-                    && ((AnimationFrame) preFrame).disposalMethod) {
-                final float left = (float) preFrame.frameX * 2 / (float) sampleSize;
-                final float top = (float) preFrame.frameY * 2 / (float) sampleSize;
-                final float right = (float) (preFrame.frameX * 2 + preFrame.frameWidth) / (float) sampleSize;
-                final float bottom = (float) (preFrame.frameY * 2 + preFrame.frameHeight) / (float) sampleSize;
-                canvas.drawRect(left, top, right, bottom, mTransparentFillPaint);
+            //Dispose to background color. Fill the rectangle on the canvas covered by the previous frame with background color specified in the ANIM chunk.
+            compositor.dispose();
+        }
+        int x = 0;
+        int y = 0;
+        int blendOp = FrameCompositor.BLEND_OP_OVER;
+        if (frame instanceof AnimationFrame) {
+            AnimationFrame animationFrame = (AnimationFrame) frame;
+            x = frame.frameX * 2 / sampleSize;
+            y = frame.frameY * 2 / sampleSize;
+            compositor.setDisposal(
+                    animationFrame.disposalMethod ? FrameCompositor.DISPOSE_OP_BACKGROUND : FrameCompositor.DISPOSE_OP_NONE,
+                    background,
+                    x,
+                    y,
+                    (frame.frameX * 2 + frame.frameWidth) / sampleSize,
+                    (frame.frameY * 2 + frame.frameHeight) / sampleSize);
+            if (animationFrame.blendingMethod) {
+                blendOp = FrameCompositor.BLEND_OP_SOURCE;
+            }
+        }
+        if (frame instanceof AnimationFrame && AnimationFrame.isNativeDecoderEnabled()) {
+            int width = frame.frameWidth / sampleSize;
+            int height = frame.frameHeight / sampleSize;
+            if (width > 0 && height > 0) {
+                int[] pixels = obtainFramePixels(width * height);
+                // libwebp解码失败时退回BitmapFactory
+                if (((AnimationFrame) frame).decode(pixels, width, height, getWriter(),
+                        getEncodedFrameCache(), frameIndex)) {
+                    compositor.blend(pixels, 0, width, x, y, width, height, blendOp);
+                    compositor.copyTo(frameBuffer);
+                    return;
+                }
             }
         }
         Bitmap inBitmap = null;
         if (frame.frameWidth > 0 && frame.frameHeight > 0) {
             inBitmap = obtainBitmap(frame.frameWidth / sampleSize, frame.frameHeight / sampleSize);
         }
-        recycleBitmap(frame.draw(canvas, paint, sampleSize, inBitmap, getWriter()));
+        try {
+            Bitmap bitmap;
+            if (frame instanceof AnimationFrame) {
+                bitmap = ((AnimationFrame) frame).decode(sampleSize, inBitmap, getWriter(),
+                        getEncodedFrameCache(), frameIndex);
+            } else {
+                bitmap = ((StillFrame) frame).decode(sampleSize, inBitmap);
+            }
+            if (bitmap != null) {
+                compositeBitmap(compositor, bitmap, x, y, blendOp);
+                if (bitmap != inBitmap) {
+                    recycleBitmap(bitmap);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         recycleBitmap(inBitmap);
-        frameBuffer.rewind();
-        bitmap.copyPixelsToBuffer(frameBuffer);
-        recycleBitmap(bitmap);
+        compositor.copyTo(frameBuffer);
     }
 }
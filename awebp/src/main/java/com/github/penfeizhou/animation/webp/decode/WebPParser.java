@@ -88,12 +88,12 @@ public class WebPParser {
             if (!reader.matchFourCC("WEBP")) {
                 return false;
             }
-            while (reader.available() > 0) {
-                BaseChunk chunk = parseChunk(reader);
-                if (chunk instanceof VP8XChunk) {
-                    return ((VP8XChunk) chunk).animation();
-                }
+            // 动图必须以VP8X块开头，只需读取其flags
+            if (reader.getFourCC() != VP8XChunk.ID) {
+                return false;
             }
+            reader.skip(4);
+            return (reader.peek() & VP8XChunk.FLAG_ANIMATION) == VP8XChunk.FLAG_ANIMATION;
         } catch (IOException e) {
             if (!(e instanceof FormatException)) {
                 e.printStackTrace();
@@ -103,6 +103,13 @@ public class WebPParser {
     }
 
     public static List<BaseChunk> parse(WebPReader reader) throws IOException {
+        return parse(reader, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param frameLimit stop after this many ANMF chunks
+     */
+    public static List<BaseChunk> parse(WebPReader reader, int frameLimit) throws IOException {
         //@link {https://developers.google.com/speed/webp/docs/riff_container#webp_file_header}
         if (!reader.matchFourCC("RIFF")) {
             throw new FormatException();
@@ -112,8 +119,13 @@ public class WebPParser {
             throw new FormatException();
         }
         List<BaseChunk> chunks = new ArrayList<>();
-        while (reader.available() > 0) {
-            chunks.add(parseChunk(reader));
+        int frameCount = 0;
+        while (reader.available() > 0 && frameCount < frameLimit) {
+            BaseChunk chunk = parseChunk(reader);
+            if (chunk instanceof ANMFChunk) {
+                frameCount++;
+            }
+            chunks.add(chunk);
         }
         return chunks;
     }
@@ -2,10 +2,12 @@ package com.github.penfeizhou.animation.webp.io;
 
 import android.text.TextUtils;
 
+import com.github.penfeizhou.animation.io.ByteBufferReader;
 import com.github.penfeizhou.animation.io.FilterReader;
 import com.github.penfeizhou.animation.io.Reader;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * @Author: pengfei.zhou
@@ -27,6 +29,17 @@ public class WebPReader extends FilterReader {
         super(reader);
     }
 
+    /**
+     * @return the buffer this reader reads from, positions of both match, or null if it reads
+     * something else
+     */
+    public ByteBuffer getByteBuffer() {
+        if (reader instanceof ByteBufferReader) {
+            return ((ByteBufferReader) reader).getByteBuffer();
+        }
+        return null;
+    }
+
     /**
      * @return uint16 A 16-bit, little-endian, unsigned integer.
      */
@@ -49,18 +62,14 @@ public class WebPReader extends FilterReader {
      * @return uint32 A 32-bit, little-endian, unsigned integer.
      */
     public int getUInt32() throws IOException {
-        byte[] buf = ensureBytes();
-        read(buf, 0, 4);
-        return buf[0] & 0xff | (buf[1] & 0xff) << 8 | (buf[2] & 0xff) << 16 | (buf[3] & 0xff) << 24;
+        return readIntLE();
     }
 
     /**
      * @return FourCC A FourCC (four-character code) is a uint32 created by concatenating four ASCII characters in little-endian order.
      */
     public int getFourCC() throws IOException {
-        byte[] buf = ensureBytes();
-        read(buf, 0, 4);
-        return buf[0] & 0xff | (buf[1] & 0xff) << 8 | (buf[2] & 0xff) << 16 | (buf[3] & 0xff) << 24;
+        return readIntLE();
     }
 
 
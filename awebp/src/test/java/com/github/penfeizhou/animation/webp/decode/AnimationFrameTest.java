@@ -0,0 +1,262 @@
+package com.github.penfeizhou.animation.webp.decode;
+
+import com.github.penfeizhou.animation.decode.EncodedFrameCache;
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+import com.github.penfeizhou.animation.io.Reader;
+import com.github.penfeizhou.animation.io.StreamReader;
+import com.github.penfeizhou.animation.webp.io.WebPReader;
+import com.github.penfeizhou.animation.webp.io.WebPWriter;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AnimationFrameTest {
+    // ALPH and VP8L payloads are not parsed, any bytes do for the container tests
+    private static final byte[] ALPH = {1, 2, 3};
+    private static final byte[] VP8L = {0x2f, 4, 5, 6, 7};
+
+    @After
+    public void restoreDecoder() {
+        AnimationFrame.setNativeDecoderEnabled(true);
+    }
+
+    /**
+     * An animated WebP with one ANMF frame holding an optional ALPH and a VP8L chunk
+     */
+    private static byte[] animatedWebP(int frameX, int frameY, int width, int height,
+                                       int duration, int flags, boolean alpha) {
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        if (alpha) {
+            writeChunk(image, "ALPH", ALPH);
+        }
+        writeChunk(image, "VP8L", VP8L);
+
+        ByteArrayOutputStream anmf = new ByteArrayOutputStream();
+        writeUInt24(anmf, frameX);
+        writeUInt24(anmf, frameY);
+        writeUInt24(anmf, width - 1);
+        writeUInt24(anmf, height - 1);
+        writeUInt24(anmf, duration);
+        anmf.write(flags);
+        byte[] imageChunks = image.toByteArray();
+        anmf.write(imageChunks, 0, imageChunks.length);
+
+        ByteArrayOutputStream vp8x = new ByteArrayOutputStream();
+        vp8x.write(VP8XChunk.FLAG_ANIMATION | (alpha ? 0x10 : 0));
+        writeUInt24(vp8x, 0);
+        writeUInt24(vp8x, frameX * 2 + width - 1);
+        writeUInt24(vp8x, frameY * 2 + height - 1);
+
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        writeChunk(chunks, "VP8X", vp8x.toByteArray());
+        writeChunk(chunks, "ANIM", new byte[6]);
+        writeChunk(chunks, "ANMF", anmf.toByteArray());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFourCC(out, "RIFF");
+        writeUInt32(out, 4 + chunks.size());
+        writeFourCC(out, "WEBP");
+        byte[] body = chunks.toByteArray();
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, String fourCC, byte[] payload) {
+        writeFourCC(out, fourCC);
+        writeUInt32(out, payload.length);
+        out.write(payload, 0, payload.length);
+        // odd payloads are padded to an even size
+        if ((payload.length & 1) == 1) {
+            out.write(0);
+        }
+    }
+
+    private static void writeFourCC(ByteArrayOutputStream out, String fourCC) {
+        for (int i = 0; i < 4; i++) {
+            out.write(fourCC.charAt(i));
+        }
+    }
+
+    private static void writeUInt24(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write(value >> 8 & 0xff);
+        out.write(value >> 16 & 0xff);
+    }
+
+    private static void writeUInt32(ByteArrayOutputStream out, int value) {
+        writeUInt24(out, value);
+        out.write(value >>> 24);
+    }
+
+    private static int readUInt24(byte[] data, int offset) {
+        return data[offset] & 0xff | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16;
+    }
+
+    private static int readUInt32(byte[] data, int offset) {
+        return readUInt24(data, offset) | (data[offset + 3] & 0xff) << 24;
+    }
+
+    private static String readFourCC(byte[] data, int offset) {
+        return new String(data, offset, 4);
+    }
+
+    private static List<AnimationFrame> frames(Reader in) throws IOException {
+        WebPReader reader = new WebPReader(in);
+        List<AnimationFrame> frames = new ArrayList<>();
+        for (BaseChunk chunk : WebPParser.parse(reader)) {
+            if (chunk instanceof ANMFChunk) {
+                frames.add(new AnimationFrame(reader, (ANMFChunk) chunk));
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * The RIFF rebuilt for BitmapFactory, taken from the cache it is put in
+     */
+    private static byte[] rebuiltRiff(AnimationFrame frame) {
+        EncodedFrameCache cache = new EncodedFrameCache(1 << 20);
+        frame.decode(1, null, new WebPWriter(), cache, 0);
+        return cache.get(0);
+    }
+
+    /**
+     * Gradle runs unit tests in the module directory
+     */
+    private static File sample(String name) {
+        File file = new File("../app/src/main/assets", name);
+        return file.exists() ? file : new File("app/src/main/assets", name);
+    }
+
+    @Test
+    public void anmfChunk_givesTheFrameGeometryAndImageChunks() throws IOException {
+        byte[] data = animatedWebP(3, 4, 10, 7, 0, 0x3, true);
+        List<AnimationFrame> frames = frames(new ByteBufferReader(ByteBuffer.wrap(data)));
+        assertEquals(1, frames.size());
+        AnimationFrame frame = frames.get(0);
+        assertEquals(3, frame.frameX);
+        assertEquals(4, frame.frameY);
+        assertEquals(10, frame.frameWidth);
+        assertEquals(7, frame.frameHeight);
+        // a duration of 0 plays at 10 fps
+        assertEquals(100, frame.frameDuration);
+        assertTrue(frame.blendingMethod);
+        assertTrue(frame.disposalMethod);
+        // the image chunks follow the 16 bytes of frame fields and end the file
+        assertEquals("ALPH", readFourCC(data, frame.imagePayloadOffset));
+        assertEquals(data.length, frame.imagePayloadOffset + frame.imagePayloadSize);
+    }
+
+    @Test
+    public void rebuiltRiff_wrapsTheImageChunksInAVP8XHeader() throws IOException {
+        for (boolean alpha : new boolean[]{false, true}) {
+            byte[] data = animatedWebP(1, 2, 300, 5, 40, 0, alpha);
+            AnimationFrame frame = frames(new ByteBufferReader(ByteBuffer.wrap(data))).get(0);
+            byte[] riff = rebuiltRiff(frame);
+
+            assertEquals(12 + 8 + 10 + frame.imagePayloadSize, riff.length);
+            assertEquals("RIFF", readFourCC(riff, 0));
+            // the size field counts what follows it, libwebp rejects anything larger
+            assertEquals(riff.length - 8, readUInt32(riff, 4));
+            assertEquals("WEBP", readFourCC(riff, 8));
+            assertEquals("VP8X", readFourCC(riff, 12));
+            assertEquals(10, readUInt32(riff, 16));
+            assertEquals(alpha ? 0x10 : 0, riff[20]);
+            assertEquals(0, readUInt24(riff, 21));
+            assertEquals(299, readUInt24(riff, 24));
+            assertEquals(4, readUInt24(riff, 27));
+            assertArrayEquals(Arrays.copyOfRange(data, frame.imagePayloadOffset, data.length),
+                    Arrays.copyOfRange(riff, 30, riff.length));
+        }
+    }
+
+    @Test
+    public void rebuiltRiff_isTakenFromTheCacheOnceBuilt() throws IOException {
+        byte[] data = animatedWebP(0, 0, 8, 8, 40, 0, false);
+        AnimationFrame frame = frames(new StreamReader(new ByteArrayInputStream(data))).get(0);
+        EncodedFrameCache cache = new EncodedFrameCache(1 << 20);
+        WebPWriter writer = new WebPWriter();
+        frame.decode(1, null, writer, cache, 5);
+        byte[] cached = cache.get(5);
+        frame.decode(1, null, writer, cache, 5);
+        assertSame(cached, cache.get(5));
+        // one miss while building it, three lookups that hit
+        assertEquals(1, cache.missCount());
+        assertEquals(3, cache.hitCount());
+    }
+
+    @Test
+    public void nativeDecoderDisabled_leavesThePixelsToBitmapFactory() throws IOException {
+        AnimationFrame.setNativeDecoderEnabled(false);
+        assertFalse(AnimationFrame.isNativeDecoderEnabled());
+        byte[] data = animatedWebP(0, 0, 4, 4, 40, 0, false);
+        AnimationFrame frame = frames(new ByteBufferReader(ByteBuffer.wrap(data))).get(0);
+        int[] pixels = new int[16];
+        Arrays.fill(pixels, 0x12345678);
+        EncodedFrameCache cache = new EncodedFrameCache(1 << 20);
+        assertFalse(frame.decode(pixels, 4, 4, new WebPWriter(), cache, 0));
+        for (int pixel : pixels) {
+            assertEquals(0x12345678, pixel);
+        }
+        // nothing was rebuilt for a decode that did not happen
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void nativeDecoder_sameFramesFromAnyReader() throws IOException {
+        AnimationFrame.setNativeDecoderEnabled(true);
+        Assume.assumeTrue("animation-decoder-webp not on java.library.path",
+                AnimationFrame.isNativeDecoderEnabled());
+        for (String name : new String[]{"2.webp", "world-cup.webp", "world-cup_lossy.webp"}) {
+            byte[] data = Files.readAllBytes(sample(name).toPath());
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+            direct.put(data);
+            direct.position(0);
+            // a slice of a larger array has a nonzero arrayOffset
+            byte[] larger = new byte[data.length + 7];
+            System.arraycopy(data, 0, larger, 7, data.length);
+            ByteBuffer slice = ByteBuffer.wrap(larger, 7, data.length).slice();
+
+            List<AnimationFrame> heap = frames(new ByteBufferReader(ByteBuffer.wrap(data)));
+            List<List<AnimationFrame>> others = new ArrayList<>();
+            others.add(frames(new ByteBufferReader(direct)));
+            others.add(frames(new ByteBufferReader(slice)));
+            // not a buffer, the rebuilt RIFF is decoded
+            others.add(frames(new StreamReader(new ByteArrayInputStream(data))));
+            assertTrue(name, heap.size() > 0);
+            for (int sampleSize = 1; sampleSize <= 2; sampleSize++) {
+                for (int i = 0; i < heap.size(); i++) {
+                    AnimationFrame frame = heap.get(i);
+                    int width = Math.max(1, frame.frameWidth / sampleSize);
+                    int height = Math.max(1, frame.frameHeight / sampleSize);
+                    int[] expected = new int[width * height];
+                    assertTrue(name + " frame " + i,
+                            frame.decode(expected, width, height, new WebPWriter(), null, i));
+                    for (List<AnimationFrame> frames : others) {
+                        int[] pixels = new int[expected.length];
+                        assertTrue(name + " frame " + i,
+                                frames.get(i).decode(pixels, width, height, new WebPWriter(), null, i));
+                        assertArrayEquals(name + " frame " + i + " sample " + sampleSize, expected, pixels);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.github.penfeizhou.animation.gif.decode.ApplicationExtension;
 import com.github.penfeizhou.animation.gif.decode.Block;
 import com.github.penfeizhou.animation.gif.decode.ColorTable;
 import com.github.penfeizhou.animation.gif.decode.GifFrame;
+import com.github.penfeizhou.animation.gif.decode.GifFrameBuffers;
 import com.github.penfeizhou.animation.gif.decode.GifParser;
 import com.github.penfeizhou.animation.gif.decode.GraphicControlExtension;
 import com.github.penfeizhou.animation.gif.decode.ImageDescriptor;
@@ -117,10 +118,11 @@ public class WebPEncoder {
                 this.bgColor = Color.rgb(abgr & 0xff, (abgr >> 8) & 0xff, (abgr >> 16) & 0xff);
             }
             GifWriter writer = new GifWriter();
+            GifFrameBuffers buffers = new GifFrameBuffers();
             for (GifFrame frame : frames) {
                 writer.reset(frame.frameWidth * frame.frameHeight);
                 int[] pixels = writer.asIntArray();
-                frame.encode(pixels, 1);
+                frame.encode(pixels, 1, buffers);
                 Bitmap bitmap = Bitmap.createBitmap(frame.frameWidth, frame.frameHeight, Bitmap.Config.ARGB_8888);
                 bitmap.copyPixelsFromBuffer(writer.asBuffer().rewind());
                 FrameBuilder frameBuilder = new FrameBuilder();
@@ -0,0 +1,136 @@
+package com.github.penfeizhou.animation.decode;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Compares compositing one frame OVER the canvas and copying the canvas into the frame buffer,
+ * with Canvas.drawBitmap as the decoders did before {@link FrameCompositor}, and with
+ * {@link FrameCompositor} blending in Java and through the native kernel.
+ * Median times are logged under the tag FrameCompositorCanvasBenchmark.
+ * Skipped unless run with the benchmark argument, e.g.
+ * ./gradlew :frameanimation:connectedDebugAndroidTest
+ * -Pandroid.testInstrumentationRunnerArguments.benchmark=true
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameCompositorCanvasBenchmark {
+    private static final String TAG = "FrameCompositorCanvasBenchmark";
+    private static final int WARMUP = 20;
+    private static final int RUNS = 50;
+
+    @BeforeClass
+    public static void checkEnabled() {
+        Assume.assumeTrue(Boolean.parseBoolean(
+                InstrumentationRegistry.getArguments().getString("benchmark", "false")));
+    }
+
+    @After
+    public void restoreKernel() {
+        FrameCompositor.setNativeKernelEnabled(true);
+    }
+
+    private static long median(long[] times) {
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+
+    /**
+     * Same content as the host benchmark, a third each transparent, translucent and opaque
+     */
+    private static int[] frame(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int alpha;
+            switch ((i / 7 + i / width) % 3) {
+                case 0:
+                    alpha = 0;
+                    break;
+                case 1:
+                    alpha = 0x20 + (i * 13 & 0xbf);
+                    break;
+                default:
+                    alpha = 0xff;
+                    break;
+            }
+            int color = i * 0x9e3779b9;
+            pixels[i] = alpha << 24
+                    | (color >>> 16 & 0xff) * alpha / 255 << 16
+                    | (color >>> 8 & 0xff) * alpha / 255 << 8
+                    | (color & 0xff) * alpha / 255;
+        }
+        return pixels;
+    }
+
+    private static long canvasPath(int size, int[] pixels) {
+        Bitmap frame = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        frame.copyPixelsFromBuffer(IntBuffer.wrap(pixels));
+        Bitmap canvasBitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        canvasBitmap.eraseColor(0xff996633);
+        Canvas canvas = new Canvas(canvasBitmap);
+        Paint paint = new Paint();
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_OVER));
+        ByteBuffer frameBuffer = ByteBuffer.allocate(size * size * 4);
+        long[] times = new long[RUNS];
+        for (int i = -WARMUP; i < RUNS; i++) {
+            long start = System.nanoTime();
+            canvas.drawBitmap(frame, 0, 0, paint);
+            frameBuffer.rewind();
+            canvasBitmap.copyPixelsToBuffer(frameBuffer);
+            if (i >= 0) {
+                times[i] = System.nanoTime() - start;
+            }
+        }
+        frame.recycle();
+        canvasBitmap.recycle();
+        return median(times);
+    }
+
+    private static long compositorPath(int size, int[] pixels, boolean nativeKernel) {
+        FrameCompositor.setNativeKernelEnabled(nativeKernel);
+        FrameCompositor compositor = new FrameCompositor(size, size);
+        compositor.clear(0xff336699);
+        ByteBuffer frameBuffer = ByteBuffer.allocate(size * size * 4);
+        long[] times = new long[RUNS];
+        for (int i = -WARMUP; i < RUNS; i++) {
+            long start = System.nanoTime();
+            compositor.blend(pixels, 0, size, 0, 0, size, size, FrameCompositor.BLEND_OP_OVER);
+            compositor.copyTo(frameBuffer);
+            if (i >= 0) {
+                times[i] = System.nanoTime() - start;
+            }
+        }
+        return median(times);
+    }
+
+    @Test
+    public void blendOver() {
+        FrameCompositor.setNativeKernelEnabled(true);
+        boolean hasNative = FrameCompositor.isNativeKernelEnabled();
+        for (int size : new int[]{256, 512, 1024}) {
+            int[] pixels = frame(size, size);
+            String line = size + "x" + size + " canvas " + canvasPath(size, pixels) / 1000 + "us"
+                    + ", java " + compositorPath(size, pixels, false) / 1000 + "us";
+            if (hasNative) {
+                line += ", native " + compositorPath(size, pixels, true) / 1000 + "us";
+            }
+            Log.i(TAG, line);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+//
+// Created by pengfei.zhou on 2026-10-18.
+//
+
+#include <jni.h>
+
+#include "PixelRows.h"
+
+#define COMPOSITOR_CLASS_PATH "com/github/penfeizhou/animation/decode/NativeCompositor"
+
+/**
+ * Rows of src blended OVER rows of dst, both Java int arrays already clipped by FrameCompositor.
+ * The arrays are pinned with critical access, so nothing is copied in or out.
+ */
+static void blendOver(JNIEnv *env, jclass, jintArray src, jint srcOffset, jint srcStride,
+                      jintArray dst, jint dstOffset, jint dstStride, jint w, jint h) {
+    if (w <= 0 || h <= 0) {
+        return;
+    }
+    auto *srcPixels = static_cast<uint32_t *>(env->GetPrimitiveArrayCritical(src, nullptr));
+    if (srcPixels == nullptr) {
+        return;
+    }
+    auto *dstPixels = static_cast<uint32_t *>(env->GetPrimitiveArrayCritical(dst, nullptr));
+    if (dstPixels == nullptr) {
+        env->ReleasePrimitiveArrayCritical(src, srcPixels, JNI_ABORT);
+        return;
+    }
+    const uint32_t *s = srcPixels + srcOffset;
+    uint32_t *d = dstPixels + dstOffset;
+    for (int row = 0; row < h; row++) {
+        blendRowOver(d, s, (size_t) w);
+        s += srcStride;
+        d += dstStride;
+    }
+    env->ReleasePrimitiveArrayCritical(dst, dstPixels, 0);
+    env->ReleasePrimitiveArrayCritical(src, srcPixels, JNI_ABORT);
+}
+
+static void fillBehind(JNIEnv *env, jclass, jintArray dst, jint count, jint color) {
+    if (count <= 0) {
+        return;
+    }
+    auto *dstPixels = static_cast<uint32_t *>(env->GetPrimitiveArrayCritical(dst, nullptr));
+    if (dstPixels == nullptr) {
+        return;
+    }
+    fillBehindRow(dstPixels, (uint32_t) color, (size_t) count);
+    env->ReleasePrimitiveArrayCritical(dst, dstPixels, 0);
+}
+
+static JNINativeMethod methods[] = {
+        {"blendOver",  "([III[IIIII)V", (void *) &blendOver},
+        {"fillBehind", "([III)V",       (void *) &fillBehind},
+};
+
+jint JNI_OnLoad(JavaVM *vm, void *) {
+    JNIEnv *env;
+    if (vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) != JNI_OK) {
+        return -1;
+    }
+    jclass clazz = env->FindClass(COMPOSITOR_CLASS_PATH);
+    if (clazz == nullptr
+        || env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0])) < 0) {
+        return -1;
+    }
+    return JNI_VERSION_1_6;
+}
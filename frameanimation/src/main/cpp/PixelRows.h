@@ -0,0 +1,61 @@
+#ifndef APNG4ANDROID_PIXELROWS_H
+#define APNG4ANDROID_PIXELROWS_H
+
+#include <stdint.h>
+#include <stddef.h>
+#include <string.h>
+
+// Keep in sync with com.github.penfeizhou.animation.decode.FrameCompositor
+#define BLEND_OP_SOURCE 0
+#define BLEND_OP_OVER 1
+#define DISPOSE_OP_NONE 0
+#define DISPOSE_OP_BACKGROUND 1
+#define DISPOSE_OP_PREVIOUS 2
+
+// Pixels are premultiplied RGBA_8888 read as native uint32, alpha in the high byte.
+static inline uint32_t scalePixel(uint32_t pixel, uint32_t factor) {
+    uint32_t rb = (pixel & 0x00ff00ffu) * factor + 0x00800080u;
+    rb = ((rb + ((rb >> 8) & 0x00ff00ffu)) >> 8) & 0x00ff00ffu;
+    uint32_t ag = ((pixel >> 8) & 0x00ff00ffu) * factor + 0x00800080u;
+    ag = (ag + ((ag >> 8) & 0x00ff00ffu)) & 0xff00ff00u;
+    return ag | rb;
+}
+
+// Branch free, so that the loop is vectorized. A transparent source pixel keeps dst exactly,
+// an opaque one replaces it since dst is scaled by 0.
+static inline void blendRowOver(uint32_t *__restrict dst, const uint32_t *__restrict src, size_t count) {
+    for (size_t i = 0; i < count; i++) {
+        uint32_t s = src[i];
+        uint32_t sa = s >> 24;
+        uint32_t d = dst[i];
+        uint32_t blended = s + scalePixel(d, 0xff - sa);
+        dst[i] = sa == 0 ? d : blended;
+    }
+}
+
+static inline void blendRow(uint32_t *__restrict dst, const uint32_t *__restrict src, size_t count,
+                            int blendOp) {
+    if (blendOp == BLEND_OP_SOURCE) {
+        memcpy(dst, src, count * sizeof(uint32_t));
+    } else {
+        blendRowOver(dst, src, count);
+    }
+}
+
+static inline void fillRow(uint32_t *dst, uint32_t color, size_t count) {
+    for (size_t i = 0; i < count; i++) {
+        dst[i] = color;
+    }
+}
+
+// Paint color behind the pixels, the equivalent of a DST_OVER fill, branch free like blendRowOver
+static inline void fillBehindRow(uint32_t *dst, uint32_t color, size_t count) {
+    for (size_t i = 0; i < count; i++) {
+        uint32_t d = dst[i];
+        uint32_t da = d >> 24;
+        uint32_t filled = d + scalePixel(color, 0xff - da);
+        dst[i] = da == 0 ? color : filled;
+    }
+}
+
+#endif //APNG4ANDROID_PIXELROWS_H
@@ -306,15 +306,18 @@ public abstract class FrameAnimationDrawable<Decoder extends FrameSeqDecoder<?,
     }
 
     public int getMemorySize() {
-        int size = frameSeqDecoder.getMemorySize();
+        long size = frameSeqDecoder.getEstimatedMemorySize();
         if (bitmap != null && !bitmap.isRecycled()) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
                 size += bitmap.getAllocationByteCount();
             } else {
                 size += bitmap.getByteCount();
             }
+        } else {
+            // 尚未创建的显示Bitmap也按画布大小计入
+            size += frameSeqDecoder.getCanvasByteCount();
         }
-        return Math.max(1, size);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, size));
     }
 
     @Nullable
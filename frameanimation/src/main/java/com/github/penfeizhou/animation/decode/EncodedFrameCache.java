@@ -0,0 +1,104 @@
+package com.github.penfeizhou.animation.decode;
+
+import java.util.Arrays;
+
+/**
+ * @Description: Cache of the bytes each frame is rebuilt into before decoding, keyed by frame index
+ * and bounded by total bytes, so later loops skip reading chunks back.
+ * GIF keeps the decoded palette indices of a frame here instead, one byte per pixel.
+ * Frames are kept in the order they are first put until the budget is used up and never evicted.
+ * Playback visits frames cyclically, so an LRU would evict every frame before its next use as soon
+ * as the animation is larger than the budget; pinning the first frames keeps them all hits.
+ */
+public class EncodedFrameCache {
+    private final int maxBytes;
+    private byte[][] entries = new byte[0][];
+    private int size;
+    private int hitCount;
+    private int missCount;
+
+    /**
+     * @param maxBytes upper bound of the summed blob sizes
+     */
+    public EncodedFrameCache(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return cached bytes of the frame, or null on a miss
+     */
+    public synchronized byte[] get(int index) {
+        byte[] data = index >= 0 && index < entries.length ? entries[index] : null;
+        if (data == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return data;
+    }
+
+    /**
+     * @return whether length more bytes fit in the budget
+     */
+    public synchronized boolean canPut(int length) {
+        return canPut(-1, length);
+    }
+
+    /**
+     * @return whether length bytes fit in the budget once the entry of index, if any, is replaced
+     */
+    public synchronized boolean canPut(int index, int length) {
+        return length <= maxBytes - size + entrySize(index);
+    }
+
+    /**
+     * Cache a copy of the first length bytes of data, which is usually a reused writer buffer.
+     * Nothing is copied once the budget is used up.
+     *
+     * @return the cached copy, or data itself if it was not cached
+     */
+    public synchronized byte[] put(int index, byte[] data, int length) {
+        if (index < 0 || !canPut(index, length)) {
+            return data;
+        }
+        if (index >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(index + 1, entries.length * 2));
+        }
+        byte[] copy = Arrays.copyOf(data, length);
+        size -= entrySize(index);
+        entries[index] = copy;
+        size += length;
+        return copy;
+    }
+
+    private int entrySize(int index) {
+        return index >= 0 && index < entries.length && entries[index] != null ? entries[index].length : 0;
+    }
+
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+    /**
+     * @return bytes currently held
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return upper bound of the bytes this cache may hold
+     */
+    public int maxSize() {
+        return maxBytes;
+    }
+
+    public synchronized void evictAll() {
+        entries = new byte[0][];
+        size = 0;
+    }
+}
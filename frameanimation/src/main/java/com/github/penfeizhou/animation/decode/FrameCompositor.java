@@ -0,0 +1,296 @@
+package com.github.penfeizhou.animation.decode;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * @Description: Software compositor shared by all frame formats.
+ * Pixels are premultiplied 32-bit values laid out as an ARGB_8888 bitmap reads them back
+ * through an IntBuffer, i.e. alpha in the high byte. Blending only depends on the alpha byte,
+ * so the order of the three color channels does not matter here.
+ */
+public class FrameCompositor {
+    /**
+     * All color components of the frame, including alpha, overwrite the canvas region.
+     */
+    public static final int BLEND_OP_SOURCE = 0;
+    /**
+     * The frame is composited onto the canvas with a premultiplied OVER operation.
+     */
+    public static final int BLEND_OP_OVER = 1;
+
+    /**
+     * Leave the canvas as is before rendering the next frame.
+     */
+    public static final int DISPOSE_OP_NONE = 0;
+    /**
+     * Fill the frame region with the disposal color before rendering the next frame.
+     */
+    public static final int DISPOSE_OP_BACKGROUND = 1;
+    /**
+     * Revert the frame region to its content before this frame was rendered.
+     */
+    public static final int DISPOSE_OP_PREVIOUS = 2;
+    /**
+     * Smaller rects are blended in Java, the JNI call costs more than the native loop saves
+     */
+    static final int NATIVE_MIN_PIXELS = 4096;
+
+    private final int width;
+    private final int height;
+    private final int[] canvas;
+    private int[] previous = new int[0];
+
+    private int disposeOp = DISPOSE_OP_NONE;
+    private int disposeColor;
+    private int disposeLeft;
+    private int disposeTop;
+    private int disposeRight;
+    private int disposeBottom;
+
+    private ByteBuffer target;
+    private IntBuffer targetView;
+
+    public FrameCompositor(int width, int height) {
+        this.width = Math.max(0, width);
+        this.height = Math.max(0, height);
+        this.canvas = new int[this.width * this.height];
+    }
+
+    /**
+     * Switch the native blending kernel on or off, it is only used when animation-compositor
+     * is packaged. Frames are blended in Java otherwise.
+     */
+    public static void setNativeKernelEnabled(boolean enabled) {
+        NativeCompositor.setEnabled(enabled);
+    }
+
+    public static boolean isNativeKernelEnabled() {
+        return NativeCompositor.isEnabled();
+    }
+
+    private static boolean useNativeKernel(int pixels) {
+        return pixels >= NATIVE_MIN_PIXELS && NativeCompositor.isEnabled();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * @return bytes held by the canvas and the saved restore-previous region
+     */
+    public int getMemorySize() {
+        return (canvas.length + previous.length) * 4;
+    }
+
+    /**
+     * Fill the whole canvas with color and forget any pending disposal, used on the first frame.
+     */
+    public void clear(int color) {
+        fill(canvas, width, 0, 0, width, height, color);
+        disposeOp = DISPOSE_OP_NONE;
+    }
+
+    /**
+     * Apply the disposal recorded by the last {@link #setDisposal} call.
+     */
+    public void dispose() {
+        switch (disposeOp) {
+            case DISPOSE_OP_BACKGROUND:
+                fill(canvas, width, disposeLeft, disposeTop, disposeRight, disposeBottom, disposeColor);
+                break;
+            case DISPOSE_OP_PREVIOUS:
+                copyRect(previous, 0, disposeRight - disposeLeft,
+                        canvas, disposeTop * width + disposeLeft, width,
+                        disposeRight - disposeLeft, disposeBottom - disposeTop);
+                break;
+            case DISPOSE_OP_NONE:
+            default:
+                break;
+        }
+        disposeOp = DISPOSE_OP_NONE;
+    }
+
+    /**
+     * Record how the frame about to be rendered is disposed before the next one.
+     * For {@link #DISPOSE_OP_PREVIOUS} the affected region is saved right away, so this has to be
+     * called before {@link #blend}.
+     *
+     * @param color only used by {@link #DISPOSE_OP_BACKGROUND}
+     */
+    public void setDisposal(int op, int color, int left, int top, int right, int bottom) {
+        disposeLeft = clamp(left, width);
+        disposeTop = clamp(top, height);
+        disposeRight = clamp(right, width);
+        disposeBottom = clamp(bottom, height);
+        disposeColor = color;
+        disposeOp = op;
+        if (op == DISPOSE_OP_PREVIOUS) {
+            int w = disposeRight - disposeLeft;
+            int h = disposeBottom - disposeTop;
+            if (previous.length < w * h) {
+                previous = new int[w * h];
+            }
+            copyRect(canvas, disposeTop * width + disposeLeft, width, previous, 0, w, w, h);
+        }
+    }
+
+    /**
+     * Composite a frame onto the canvas at (x, y), clipped to the canvas bounds.
+     *
+     * @param src       frame pixels
+     * @param srcOffset index of the frame's top-left pixel in src
+     * @param srcStride pixels per row in src
+     */
+    public void blend(int[] src, int srcOffset, int srcStride, int x, int y, int w, int h, int blendOp) {
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        int right = Math.min(width, x + w);
+        int bottom = Math.min(height, y + h);
+        if (right <= left || bottom <= top) {
+            return;
+        }
+        int srcIndex = srcOffset + (top - y) * srcStride + (left - x);
+        int dstIndex = top * width + left;
+        if (blendOp == BLEND_OP_SOURCE) {
+            copyRect(src, srcIndex, srcStride, canvas, dstIndex, width, right - left, bottom - top);
+        } else if (useNativeKernel((right - left) * (bottom - top))) {
+            NativeCompositor.blendOver(src, srcIndex, srcStride, canvas, dstIndex, width,
+                    right - left, bottom - top);
+        } else {
+            blendOver(src, srcIndex, srcStride, canvas, dstIndex, width, right - left, bottom - top);
+        }
+    }
+
+    /**
+     * Paint color behind every pixel of the canvas, the equivalent of a DST_OVER fill.
+     */
+    public void fillBehind(int color) {
+        if ((color >>> 24) == 0) {
+            return;
+        }
+        if (useNativeKernel(width * height)) {
+            NativeCompositor.fillBehind(canvas, width * height, color);
+            return;
+        }
+        int[] dst = canvas;
+        for (int i = 0, n = width * height; i < n; i++) {
+            int d = dst[i];
+            int da = d >>> 24;
+            if (da == 0) {
+                dst[i] = color;
+            } else if (da != 0xff) {
+                dst[i] = d + scale(color, 0xff - da);
+            }
+        }
+    }
+
+    /**
+     * Copy the canvas into the decoder's frame buffer, keeping the raw bitmap byte layout.
+     * Does nothing when buffer is null, e.g. while only the first frame is decoded.
+     */
+    public void copyTo(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (buffer != target) {
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.rewind();
+            target = buffer;
+            targetView = buffer.asIntBuffer();
+        }
+        targetView.clear();
+        targetView.put(canvas, 0, Math.min(canvas.length, targetView.remaining()));
+    }
+
+    /**
+     * Convert a non-premultiplied ARGB color int into the canvas pixel layout.
+     */
+    public static int colorToPixel(int argb) {
+        int a = argb >>> 24;
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        if (a != 0xff) {
+            r = mul255(r, a);
+            g = mul255(g, a);
+            b = mul255(b, a);
+        }
+        return a << 24 | b << 16 | g << 8 | r;
+    }
+
+    public static void fill(int[] dst, int stride, int left, int top, int right, int bottom, int color) {
+        for (int row = top; row < bottom; row++) {
+            int index = row * stride + left;
+            int end = row * stride + right;
+            while (index < end) {
+                dst[index++] = color;
+            }
+        }
+    }
+
+    public static void copyRect(int[] src, int srcOffset, int srcStride,
+                                int[] dst, int dstOffset, int dstStride,
+                                int w, int h) {
+        if (w <= 0) {
+            return;
+        }
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, w);
+            srcOffset += srcStride;
+            dstOffset += dstStride;
+        }
+    }
+
+    public static void blendOver(int[] src, int srcOffset, int srcStride,
+                                 int[] dst, int dstOffset, int dstStride,
+                                 int w, int h) {
+        for (int row = 0; row < h; row++) {
+            int s = srcOffset;
+            int d = dstOffset;
+            int end = srcOffset + w;
+            while (s < end) {
+                int sp = src[s++];
+                int sa = sp >>> 24;
+                if (sa == 0xff) {
+                    dst[d] = sp;
+                } else if (sa != 0) {
+                    dst[d] = sp + scale(dst[d], 0xff - sa);
+                }
+                d++;
+            }
+            srcOffset += srcStride;
+            dstOffset += dstStride;
+        }
+    }
+
+    /**
+     * Multiply all four channels of a premultiplied pixel by factor / 255.
+     */
+    private static int scale(int pixel, int factor) {
+        int rb = (pixel & 0x00ff00ff) * factor + 0x00800080;
+        rb = ((rb + ((rb >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+        int ag = ((pixel >>> 8) & 0x00ff00ff) * factor + 0x00800080;
+        ag = (ag + ((ag >>> 8) & 0x00ff00ff)) & 0xff00ff00;
+        return ag | rb;
+    }
+
+    private static int mul255(int value, int factor) {
+        int t = value * factor + 0x80;
+        return (t + (t >> 8)) >> 8;
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : Math.min(value, max);
+    }
+}
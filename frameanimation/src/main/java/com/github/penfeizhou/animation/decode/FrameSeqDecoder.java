@@ -15,6 +15,7 @@ import com.github.penfeizhou.animation.loader.Loader;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -78,7 +79,20 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
 
     protected Map<Bitmap, Canvas> cachedCanvas = new WeakHashMap<>();
     protected ByteBuffer frameBuffer;
+    private FrameCompositor compositor;
+    private int[] framePixels = new int[0];
+    private EncodedFrameCache encodedFrameCache;
+    private volatile int encodedFrameCacheSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 64, 8 * 1024 * 1024);
+    /**
+     * Bytes of the source, known once a reader was opened, 0 before
+     */
+    private volatile int sourceLength;
     protected volatile Rect fullRect;
+    /**
+     * Display size requested before the first parse, see {@link #setTargetSize}
+     */
+    private volatile int targetWidth;
+    private volatile int targetHeight;
     private W mWriter = getWriter();
     private R mReader = null;
     public static final boolean DEBUG = false;
@@ -189,6 +203,65 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         return this.speed;
     }
 
+    /**
+     * @return compositor sized to the sampled canvas, created on first use
+     */
+    protected FrameCompositor obtainCompositor() {
+        int width = fullRect.width() / sampleSize;
+        int height = fullRect.height() / sampleSize;
+        if (compositor == null || compositor.getWidth() != width || compositor.getHeight() != height) {
+            compositor = new FrameCompositor(width, height);
+        }
+        return compositor;
+    }
+
+    /**
+     * Set the byte budget of the encoded frame cache, 0 disables it.
+     * Takes effect the next time the animation is started.
+     */
+    public void setEncodedFrameCacheSize(int maxBytes) {
+        this.encodedFrameCacheSize = Math.max(0, maxBytes);
+    }
+
+    /**
+     * @return whether the next start creates the encoded frame cache, its budget is only counted
+     * in {@link #getEstimatedMemorySize()} then
+     */
+    protected boolean isEncodedFrameCacheEnabled() {
+        return encodedFrameCacheSize > 0;
+    }
+
+    /**
+     * @return cache of per-frame bytes keyed by frame index, or null when disabled
+     */
+    protected EncodedFrameCache getEncodedFrameCache() {
+        if (encodedFrameCache == null && isEncodedFrameCacheEnabled()) {
+            encodedFrameCache = new EncodedFrameCache(encodedFrameCacheSize);
+        }
+        return encodedFrameCache;
+    }
+
+    /**
+     * Blend a decoded frame bitmap onto the compositor canvas at (x, y)
+     */
+    protected void compositeBitmap(FrameCompositor compositor, Bitmap bitmap, int x, int y, int blendOp) {
+        int stride = bitmap.getRowBytes() / 4;
+        int size = stride * bitmap.getHeight();
+        int[] pixels = obtainFramePixels(size);
+        bitmap.copyPixelsToBuffer(IntBuffer.wrap(pixels, 0, size));
+        compositor.blend(pixels, 0, stride, x, y, bitmap.getWidth(), bitmap.getHeight(), blendOp);
+    }
+
+    /**
+     * @return scratch pixels of at least size, shared by all frames and counted in {@link #getMemorySize()}
+     */
+    protected int[] obtainFramePixels(int size) {
+        if (framePixels.length < size) {
+            framePixels = new int[size];
+        }
+        return framePixels;
+    }
+
     protected void recycleBitmap(Bitmap bitmap) {
         synchronized (cacheBitmapsLock) {
             if (bitmap != null) {
@@ -205,6 +278,16 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         void onEnd();
     }
 
+    /**
+     * Supplies the bitmap {@link #getFirstFrameBitmap} decodes into
+     */
+    public interface BitmapProvider {
+        /**
+         * @return a mutable ARGB_8888 bitmap of exactly width x height
+         */
+        Bitmap obtain(int width, int height);
+    }
+
     public FrameSeqDecoder(Loader loader, @Nullable RenderListener renderListener) {
         this.mLoader = loader;
         if (renderListener != null) {
@@ -254,12 +337,7 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
                 public void run() {
                     try {
                         if (fullRect == null) {
-                            if (mReader == null) {
-                                mReader = getReader(mLoader.obtain());
-                            } else {
-                                mReader.reset();
-                            }
-                            initCanvasBounds(read(mReader));
+                            initCanvasBounds(read(obtainReader()));
                         }
                     } catch (Exception | OutOfMemoryError e) {
                         e.printStackTrace();
@@ -274,8 +352,73 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         return fullRect == null ? RECT_EMPTY : fullRect;
     }
 
+    /**
+     * @return reader at the start of the source, opened on first use
+     */
+    @WorkerThread
+    private R obtainReader() throws IOException {
+        if (mReader == null) {
+            mReader = getReader(mLoader.obtain());
+            sourceLength = mReader.available();
+        } else {
+            mReader.reset();
+        }
+        return mReader;
+    }
+
+    /**
+     * Read the canvas size from the file header only, without parsing frames or allocating.
+     * Used by {@link #peekEstimatedMemorySize()}.
+     *
+     * @return null if the format cannot tell it from the header, the bounds are parsed then
+     */
+    protected Rect readBounds(R reader) throws IOException {
+        return null;
+    }
+
+    /**
+     * {@link #getEstimatedMemorySize()} of the decoder once it is parsed, taken from the file
+     * header only if the bounds are not read yet, so nothing is allocated and the decoder stays
+     * ready for {@link #getFirstFrameBitmap}. Honors {@link #setTargetSize}.
+     */
+    public int peekEstimatedMemorySize() {
+        if (fullRect != null) {
+            return getEstimatedMemorySize();
+        }
+        final Rect[] bounds = new Rect[1];
+        final Thread thread = Thread.currentThread();
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (fullRect == null) {
+                        bounds[0] = readBounds(obtainReader());
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    LockSupport.unpark(thread);
+                }
+            }
+        });
+        LockSupport.park(thread);
+        Rect rect = bounds[0];
+        if (rect == null || rect.width() <= 0 || rect.height() <= 0) {
+            // 头部读不出画布大小，退回完整解析
+            getBounds();
+            return getEstimatedMemorySize();
+        }
+        int sample = targetWidth > 0 && targetHeight > 0
+                ? getDesiredSample(rect, targetWidth, targetHeight) : sampleSize;
+        long canvasBytes = (long) (rect.width() / sample) * (rect.height() / sample) * 4;
+        // 帧缓冲与合成画布各一份
+        long size = canvasBytes * 2 + getPendingCacheBytes();
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
     private void initCanvasBounds(Rect rect) {
         fullRect = rect;
+        applyTargetSize();
         long bufferSize = ((long) rect.width() * rect.height() / ((long) sampleSize * sampleSize) + 1) * 4;
 
         try {
@@ -295,6 +438,14 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         }
     }
 
+    private void applyTargetSize() {
+        if (targetWidth > 0 && targetHeight > 0) {
+            sampleSize = getDesiredSample(targetWidth, targetHeight);
+            targetWidth = 0;
+            targetHeight = 0;
+        }
+    }
+
     public int getFrameCount() {
         return this.frames.size();
     }
@@ -340,12 +491,7 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         try {
             if (getFrameCount() == 0) {
                 try {
-                    if (mReader == null) {
-                        mReader = getReader(mLoader.obtain());
-                    } else {
-                        mReader.reset();
-                    }
-                    initCanvasBounds(read(mReader));
+                    initCanvasBounds(read(obtainReader()));
                 } catch (Throwable e) {
                     e.printStackTrace();
                 }
@@ -369,6 +515,18 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
 
     @WorkerThread
     private void innerStop() {
+        releaseAll();
+        for (RenderListener renderListener : renderListeners) {
+            renderListener.onEnd();
+        }
+    }
+
+    /**
+     * Drop frames, buffers and caches, close the reader and writer and go back to IDLE,
+     * without notifying listeners
+     */
+    @WorkerThread
+    private void releaseAll() {
         workerHandler.removeCallbacks(renderTask);
         frames.clear();
         synchronized (cacheBitmapsLock) {
@@ -382,6 +540,16 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         if (frameBuffer != null) {
             frameBuffer = null;
         }
+        compositor = null;
+        framePixels = new int[0];
+        if (encodedFrameCache != null) {
+            if (DEBUG) {
+                Log.i(TAG, debugInfo() + " encoded frame cache hit " + encodedFrameCache.hitCount()
+                        + ",miss " + encodedFrameCache.missCount());
+            }
+            encodedFrameCache.evictAll();
+            encodedFrameCache = null;
+        }
         cachedCanvas.clear();
         try {
             if (mReader != null) {
@@ -399,9 +567,6 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
             Log.i(TAG, debugInfo() + " release and Set state to IDLE");
         }
         mState = State.IDLE;
-        for (RenderListener renderListener : renderListeners) {
-            renderListener.onEnd();
-        }
     }
 
     public void stop() {
@@ -480,6 +645,18 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         return sampleSize;
     }
 
+    /**
+     * Set the size the animation will be displayed at before it is first parsed, so the canvas
+     * buffers are allocated at the matching sample size right away instead of being rebuilt by
+     * {@link #setDesiredSize} later. Ignored once bounds are known.
+     */
+    public void setTargetSize(int width, int height) {
+        if (fullRect == null) {
+            targetWidth = width;
+            targetHeight = height;
+        }
+    }
+
     public int setDesiredSize(int width, int height) {
         final int sample = getDesiredSample(width, height);
         if (sample != getSampleSize()) {
@@ -508,7 +685,11 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         if (desiredWidth == 0 || desiredHeight == 0) {
             return 1;
         }
-        int radio = Math.min(getBounds().width() / desiredWidth, getBounds().height() / desiredHeight);
+        return getDesiredSample(getBounds(), desiredWidth, desiredHeight);
+    }
+
+    private static int getDesiredSample(Rect bounds, int desiredWidth, int desiredHeight) {
+        int radio = Math.min(bounds.width() / desiredWidth, bounds.height() / desiredHeight);
         int sample = 1;
         while ((sample * 2) <= radio) {
             sample *= 2;
@@ -580,12 +761,7 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         mState = State.RUNNING;
         paused.compareAndSet(true, false);
         if (frames.size() == 0) {
-            if (mReader == null) {
-                mReader = getReader(mLoader.obtain());
-            } else {
-                mReader.reset();
-            }
-            initCanvasBounds(read(mReader));
+            initCanvasBounds(read(obtainReader()));
         }
         if (index < 0) {
             index += this.frames.size();
@@ -608,6 +784,77 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         return bitmap;
     }
 
+    /**
+     * Parse the file only as far as the first frame needs, by default the whole file.
+     * Used by {@link #getFirstFrameBitmap}, the frames list may hold just the first frame after it.
+     */
+    protected Rect readFirstFrame(R reader) throws IOException {
+        return read(reader);
+    }
+
+    /**
+     * Decode only the first frame, for posters and thumbnails. Parsing stops after the first frame
+     * where the format allows it, even if the whole file was parsed before, and the frame is
+     * composited straight into the bitmap from provider without allocating the frame buffer.
+     * Everything is released before returning, render listeners are not notified.
+     *
+     * @return null if there is no frame or the decoder is running
+     */
+    public Bitmap getFirstFrameBitmap(BitmapProvider provider) throws IOException {
+        if (mState != State.IDLE) {
+            Log.e(TAG, debugInfo() + ",stop first");
+            return null;
+        }
+        mState = State.RUNNING;
+        paused.compareAndSet(true, false);
+        try {
+            // 总是只解析第一帧，之前解析的帧与播放用的帧缓冲都不使用
+            frames.clear();
+            frameBuffer = null;
+            Rect rect = readFirstFrame(obtainReader());
+            if (fullRect == null) {
+                fullRect = rect;
+                applyTargetSize();
+            }
+            int width = fullRect.width() / sampleSize;
+            int height = fullRect.height() / sampleSize;
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+            return renderFirstFrame(provider, width, height);
+        } finally {
+            // 取首帧不是一次播放，释放时不回调onEnd
+            releaseAll();
+        }
+    }
+
+    /**
+     * Render the first frame into a bitmap from provider, called by {@link #getFirstFrameBitmap}
+     * after {@link #readFirstFrame}. The decoder is released by the caller afterwards.
+     *
+     * @param width  canvas width at the sample size
+     * @param height canvas height at the sample size
+     * @return null if there is no frame
+     */
+    protected Bitmap renderFirstFrame(BitmapProvider provider, int width, int height) throws IOException {
+        if (frames.size() == 0) {
+            return null;
+        }
+        if (mWriter == null) {
+            mWriter = getWriter();
+        }
+        frameIndex = 0;
+        renderFrame(frames.get(0));
+        FrameCompositor compositor = this.compositor;
+        Bitmap bitmap = provider.obtain(width, height);
+        if (compositor != null && compositor.getWidth() == width && compositor.getHeight() == height) {
+            bitmap.copyPixelsFromBuffer(IntBuffer.wrap(compositor.getCanvas(), 0, width * height));
+        } else {
+            bitmap.eraseColor(0);
+        }
+        return bitmap;
+    }
+
     public int getMemorySize() {
         synchronized (cacheBitmapsLock) {
             int size = 0;
@@ -624,8 +871,74 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
             if (frameBuffer != null) {
                 size += frameBuffer.capacity();
             }
+            FrameCompositor compositor = this.compositor;
+            if (compositor != null) {
+                size += compositor.getMemorySize();
+            }
+            size += framePixels.length * 4;
+            EncodedFrameCache cache = encodedFrameCache;
+            if (cache != null) {
+                size += cache.size();
+            }
             return size;
         }
     }
 
+    /**
+     * @return bytes of one ARGB_8888 canvas at the current sample size, 0 before the bounds are read
+     */
+    public int getCanvasByteCount() {
+        Rect rect = fullRect;
+        if (rect == null || rect == RECT_EMPTY) {
+            return 0;
+        }
+        long size = (long) (rect.width() / sampleSize) * (rect.height() / sampleSize) * 4;
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    /**
+     * Like {@link #getMemorySize()}, but also counts the frame buffer and compositor canvas that
+     * playback allocates on its first frame and what the encoded frame cache fills during the first
+     * loop, so a freshly parsed decoder is not reported as almost free to memory caches.
+     */
+    public int getEstimatedMemorySize() {
+        long size = getMemorySize();
+        int canvasBytes = getCanvasByteCount();
+        if (frameBuffer == null) {
+            size += canvasBytes;
+        }
+        if (compositor == null) {
+            size += canvasBytes;
+        }
+        size += getPendingCacheBytes();
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    /**
+     * @return bytes the encoded frame cache may still take on top of what it holds, its budget
+     * capped at {@link #getEncodedFrameCacheDemand()}
+     */
+    private long getPendingCacheBytes() {
+        EncodedFrameCache cache = encodedFrameCache;
+        long budget;
+        if (cache != null) {
+            budget = cache.maxSize();
+        } else if (isEncodedFrameCacheEnabled()) {
+            budget = encodedFrameCacheSize;
+        } else {
+            return 0;
+        }
+        long cached = cache == null ? 0 : cache.size();
+        return Math.max(0, Math.min(budget, getEncodedFrameCacheDemand()) - cached);
+    }
+
+    /**
+     * @return bytes the encoded frame cache would hold with every frame in it, by default the
+     * source length as the cache keeps the frames' own bytes. Long.MAX_VALUE when unknown.
+     */
+    protected long getEncodedFrameCacheDemand() {
+        int length = sourceLength;
+        return length > 0 ? length : Long.MAX_VALUE;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.github.penfeizhou.animation.decode;
+
+import android.util.Log;
+
+/**
+ * @Description: Native row kernels of {@link FrameCompositor}, built as the animation-compositor
+ * library. They work on the same int arrays through critical array access, so the Java canvas is
+ * blended in place. When the library is missing {@link FrameCompositor} blends in Java.
+ */
+class NativeCompositor {
+    private static final String TAG = "NativeCompositor";
+    private static final boolean sLoaded = loadNativeLibrary();
+    private static volatile boolean sEnabled = true;
+
+    private NativeCompositor() {
+    }
+
+    private static boolean loadNativeLibrary() {
+        try {
+            System.loadLibrary("animation-compositor");
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            // 本地单元测试等未打包该库的环境，使用Java实现
+            Log.i(TAG, "animation-compositor not available, blending in Java");
+            return false;
+        }
+    }
+
+    static boolean isEnabled() {
+        return sLoaded && sEnabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Same as {@link FrameCompositor#blendOver}, the rect must already be clipped to both arrays
+     */
+    static native void blendOver(int[] src, int srcOffset, int srcStride,
+                                 int[] dst, int dstOffset, int dstStride,
+                                 int w, int h);
+
+    /**
+     * Same as {@link FrameCompositor#fillBehind} over the first count pixels of dst
+     */
+    static native void fillBehind(int[] dst, int count, int color);
+}
@@ -0,0 +1,75 @@
+package com.github.penfeizhou.animation.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * @Description: InputStream reading a ByteBuffer in place, heap, direct or memory mapped alike.
+ * Supports mark/reset, so decoders that need to rewind do not wrap it in a buffered copy.
+ */
+class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer byteBuffer;
+    private int mark;
+
+    /**
+     * @param byteBuffer read from its position to its limit, the position is advanced
+     */
+    ByteBufferInputStream(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+        this.mark = byteBuffer.position();
+    }
+
+    @Override
+    public int read() {
+        if (!byteBuffer.hasRemaining()) {
+            return -1;
+        }
+        return byteBuffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!byteBuffer.hasRemaining()) {
+            return -1;
+        }
+        len = Math.min(len, byteBuffer.remaining());
+        byteBuffer.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skip = (int) Math.max(0, Math.min(n, byteBuffer.remaining()));
+        byteBuffer.position(byteBuffer.position() + skip);
+        return skip;
+    }
+
+    @Override
+    public int available() {
+        return byteBuffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    /**
+     * The whole buffer stays readable, so readlimit is ignored
+     */
+    @Override
+    public void mark(int readlimit) {
+        mark = byteBuffer.position();
+    }
+
+    /**
+     * Rewind to the last mark, or to where the stream started if mark was never called
+     */
+    @Override
+    public void reset() {
+        byteBuffer.position(mark);
+    }
+}
@@ -1,6 +1,5 @@
 package com.github.penfeizhou.animation.io;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -46,6 +45,35 @@ public class ByteBufferReader implements Reader {
         return byteCount;
     }
 
+    @Override
+    public int readIntLE() throws IOException {
+        ByteBuffer buffer = byteBuffer;
+        return buffer.get() & 0xff | (buffer.get() & 0xff) << 8 | (buffer.get() & 0xff) << 16 | (buffer.get() & 0xff) << 24;
+    }
+
+    @Override
+    public int readIntBE() throws IOException {
+        ByteBuffer buffer = byteBuffer;
+        return (buffer.get() & 0xff) << 24 | (buffer.get() & 0xff) << 16 | (buffer.get() & 0xff) << 8 | buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int start, int byteCount) throws IOException {
+        int limit = byteBuffer.limit();
+        if (position >= limit) {
+            return -1;
+        }
+        int count = (int) Math.min(byteCount, limit - position);
+        if (byteBuffer.hasArray()) {
+            System.arraycopy(byteBuffer.array(), byteBuffer.arrayOffset() + (int) position, buffer, start, count);
+        } else {
+            ByteBuffer duplicate = byteBuffer.duplicate();
+            duplicate.position((int) position);
+            duplicate.get(buffer, start, count);
+        }
+        return count;
+    }
+
     @Override
     public int available() throws IOException {
         return byteBuffer.limit() - byteBuffer.position();
@@ -55,9 +83,23 @@ public class ByteBufferReader implements Reader {
     public void close() throws IOException {
     }
 
+    /**
+     * A view over the whole buffer from its start to its limit, sharing the bytes without a copy.
+     * The reader's own position is not affected.
+     */
     @Override
     public InputStream toInputStream() throws IOException {
-        return new ByteArrayInputStream(byteBuffer.array());
+        ByteBuffer duplicate = byteBuffer.duplicate();
+        duplicate.position(0);
+        return new ByteBufferInputStream(duplicate);
+    }
+
+    @Override
+    public ByteBufferReader slice(int offset, int length) {
+        ByteBuffer duplicate = byteBuffer.duplicate();
+        duplicate.limit(offset + length);
+        duplicate.position(offset);
+        return new ByteBufferReader(duplicate.slice());
     }
 
     public ByteBuffer getByteBuffer() {
@@ -0,0 +1,194 @@
+package com.github.penfeizhou.animation.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @Description: Reads a file with positional FileChannel reads, so reset and skip only move
+ * an offset instead of reopening and walking the file. Small reads go through a block buffer.
+ */
+public class FileChannelReader implements Reader {
+    private static final int BLOCK_SIZE = 8 * 1024;
+    /**
+     * Owner of the channel, null for slices, which share the channel of the reader they were cut from
+     */
+    private final Closeable mFile;
+    private final FileChannel mChannel;
+    /**
+     * File offset of position 0
+     */
+    private final long mBase;
+    private final long mSize;
+    private final ByteBuffer mBlock = ByteBuffer.allocate(BLOCK_SIZE);
+    /**
+     * File offset of the first byte held by mBlock
+     */
+    private long mBlockStart;
+    private long mPosition;
+
+    public FileChannelReader(File file) throws IOException {
+        this(new RandomAccessFile(file, "r"));
+    }
+
+    /**
+     * @param file ownership is taken, it is closed together with this reader
+     */
+    public FileChannelReader(RandomAccessFile file) throws IOException {
+        this(file.getChannel(), file);
+    }
+
+    /**
+     * @param owner closed together with this reader, e.g. the stream the channel came from
+     */
+    public FileChannelReader(FileChannel channel, Closeable owner) throws IOException {
+        mFile = owner;
+        mChannel = channel;
+        mBase = 0;
+        mSize = channel.size();
+        mBlock.limit(0);
+    }
+
+    private FileChannelReader(FileChannel channel, long base, long size) {
+        mFile = null;
+        mChannel = channel;
+        mBase = base;
+        mSize = size;
+        mBlock.limit(0);
+    }
+
+    @Override
+    public long skip(long total) throws IOException {
+        long skipped = Math.max(0, Math.min(total, mSize - mPosition));
+        mPosition += skipped;
+        return skipped;
+    }
+
+    @Override
+    public byte peek() throws IOException {
+        if (mPosition < mBlockStart || mPosition >= mBlockStart + mBlock.limit()) {
+            fillBlock();
+            if (mBlock.limit() == 0) {
+                return -1;
+            }
+        }
+        return mBlock.get((int) (mPosition++ - mBlockStart));
+    }
+
+    @Override
+    public void reset() throws IOException {
+        mPosition = 0;
+    }
+
+    @Override
+    public int position() {
+        return (int) mPosition;
+    }
+
+    @Override
+    public int read(byte[] buffer, int start, int byteCount) throws IOException {
+        if (byteCount <= 0) {
+            return 0;
+        }
+        if (mPosition >= mSize) {
+            return -1;
+        }
+        int read = 0;
+        if (mPosition >= mBlockStart && mPosition < mBlockStart + mBlock.limit()) {
+            int offset = (int) (mPosition - mBlockStart);
+            read = Math.min(byteCount, mBlock.limit() - offset);
+            System.arraycopy(mBlock.array(), offset, buffer, start, read);
+            mPosition += read;
+        }
+        if (read < byteCount) {
+            int remaining = byteCount - read;
+            if (remaining >= BLOCK_SIZE) {
+                int count = Math.max(0, read(mPosition, buffer, start + read, remaining));
+                mPosition += count;
+                read += count;
+            } else {
+                fillBlock();
+                int count = Math.min(remaining, mBlock.limit());
+                System.arraycopy(mBlock.array(), 0, buffer, start + read, count);
+                mPosition += count;
+                read += count;
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int start, int byteCount) throws IOException {
+        if (position >= mSize) {
+            return -1;
+        }
+        ByteBuffer dst = ByteBuffer.wrap(buffer, start, (int) Math.min(byteCount, mSize - position));
+        while (dst.hasRemaining()) {
+            int count = mChannel.read(dst, mBase + position + dst.position() - start);
+            if (count <= 0) {
+                break;
+            }
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * The slice reads the same channel and stays valid until this reader is closed.
+     */
+    @Override
+    public Reader slice(int offset, int length) throws IOException {
+        long base = Math.min(offset, mSize);
+        return new FileChannelReader(mChannel, mBase + base, Math.min(length, mSize - base));
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, mSize - mPosition);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mFile != null) {
+            mFile.close();
+        }
+    }
+
+    @Override
+    public InputStream toInputStream() throws IOException {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (mPosition >= mSize) {
+                    return -1;
+                }
+                return peek() & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return FileChannelReader.this.read(b, off, len);
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                return FileChannelReader.this.skip(n);
+            }
+
+            @Override
+            public int available() throws IOException {
+                return FileChannelReader.this.available();
+            }
+        };
+    }
+
+    private void fillBlock() throws IOException {
+        mBlockStart = mPosition;
+        int count = Math.max(0, read(mPosition, mBlock.array(), 0, BLOCK_SIZE));
+        mBlock.clear();
+        mBlock.limit(count);
+    }
+}
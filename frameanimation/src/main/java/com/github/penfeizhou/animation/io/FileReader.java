@@ -12,15 +12,63 @@ import java.io.IOException;
  */
 public class FileReader extends FilterReader {
     private final File mFile;
+    /**
+     * Opened on the first positional access
+     */
+    private FileChannelReader mChannelReader;
 
     public FileReader(File file) throws IOException {
-        super(new StreamReader(new FileInputStream(file)));
+        super(new StreamReader(new RewindableFileInputStream(file)));
         mFile = file;
     }
 
+    /**
+     * Rewinds by seeking its channel, so {@link #reset()} reuses the open file and the
+     * StreamReader's block buffer instead of reopening both
+     */
+    private static class RewindableFileInputStream extends FileInputStream {
+        RewindableFileInputStream(File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            getChannel().position(0);
+        }
+    }
+
     @Override
-    public void reset() throws IOException {
-        reader.close();
-        reader = new StreamReader(new FileInputStream(mFile));
+    public int read(long position, byte[] buffer, int start, int byteCount) throws IOException {
+        return obtainChannelReader().read(position, buffer, start, byteCount);
+    }
+
+    @Override
+    public Reader slice(int offset, int length) throws IOException {
+        return obtainChannelReader().slice(offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (mChannelReader != null) {
+            mChannelReader.close();
+            mChannelReader = null;
+        }
+    }
+
+    private FileChannelReader obtainChannelReader() throws IOException {
+        if (mChannelReader == null) {
+            mChannelReader = new FileChannelReader(mFile);
+        }
+        return mChannelReader;
     }
 }
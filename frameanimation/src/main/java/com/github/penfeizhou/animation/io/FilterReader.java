@@ -40,6 +40,26 @@ public class FilterReader implements Reader {
         return reader.read(buffer, start, byteCount);
     }
 
+    @Override
+    public int readIntLE() throws IOException {
+        return reader.readIntLE();
+    }
+
+    @Override
+    public int readIntBE() throws IOException {
+        return reader.readIntBE();
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int start, int byteCount) throws IOException {
+        return reader.read(position, buffer, start, byteCount);
+    }
+
+    @Override
+    public Reader slice(int offset, int length) throws IOException {
+        return reader.slice(offset, length);
+    }
+
     @Override
     public int available() throws IOException {
         return reader.available();
@@ -0,0 +1,97 @@
+package com.github.penfeizhou.animation.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @Description: ByteBufferReader over an in-memory copy of a stream, whose array goes back to a
+ * shared pool on close so the next loader can reuse it. Slices must not outlive the reader.
+ */
+public class PooledByteBufferReader extends ByteBufferReader {
+    private static final int MAX_POOL_BYTES = 4 * 1024 * 1024;
+    private static final List<byte[]> sPool = new ArrayList<>();
+    private static int sPoolBytes;
+
+    private byte[] mArray;
+
+    private PooledByteBufferReader(byte[] array, int length) {
+        super(ByteBuffer.wrap(array, 0, length));
+        mArray = array;
+    }
+
+    /**
+     * Copy the rest of the stream into a pooled array, the stream is not closed
+     *
+     * @param sizeHint expected length, e.g. from available()
+     */
+    public static PooledByteBufferReader copyOf(InputStream in, int sizeHint) throws IOException {
+        byte[] array = obtain(Math.max(sizeHint, 1024));
+        int length = 0;
+        while (true) {
+            if (length == array.length) {
+                // 长度恰好等于预估值时先探测是否已到末尾，避免无谓的扩容
+                int next = in.read();
+                if (next < 0) {
+                    break;
+                }
+                byte[] grown = obtain(array.length * 2);
+                System.arraycopy(array, 0, grown, 0, length);
+                recycle(array);
+                array = grown;
+                array[length++] = (byte) next;
+            }
+            int count = in.read(array, length, array.length - length);
+            if (count < 0) {
+                break;
+            }
+            length += count;
+        }
+        return new PooledByteBufferReader(array, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (mArray != null) {
+            recycle(mArray);
+            mArray = null;
+        }
+    }
+
+    private static byte[] obtain(int size) {
+        synchronized (sPool) {
+            byte[] best = null;
+            for (byte[] array : sPool) {
+                if (array.length >= size && (best == null || array.length < best.length)) {
+                    best = array;
+                }
+            }
+            if (best != null) {
+                sPool.remove(best);
+                sPoolBytes -= best.length;
+                return best;
+            }
+        }
+        return new byte[size];
+    }
+
+    private static void recycle(byte[] array) {
+        if (array.length > MAX_POOL_BYTES) {
+            return;
+        }
+        synchronized (sPool) {
+            // 超出上限时先淘汰最早放回的数组
+            Iterator<byte[]> iterator = sPool.iterator();
+            while (sPoolBytes + array.length > MAX_POOL_BYTES && iterator.hasNext()) {
+                sPoolBytes -= iterator.next().length;
+                iterator.remove();
+            }
+            sPool.add(array);
+            sPoolBytes += array.length;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.github.penfeizhou.animation.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * @link {https://developers.google.com/speed/webp/docs/riff_container#terminology_basics}
@@ -19,6 +20,58 @@ public interface Reader {
 
     int read(byte[] buffer, int start, int byteCount) throws IOException;
 
+    /**
+     * @return 32-bit little-endian int, readers holding the bytes in a buffer override this to
+     * decode it in place
+     */
+    default int readIntLE() throws IOException {
+        return peek() & 0xff | (peek() & 0xff) << 8 | (peek() & 0xff) << 16 | (peek() & 0xff) << 24;
+    }
+
+    /**
+     * @return 32-bit big-endian int
+     */
+    default int readIntBE() throws IOException {
+        return (peek() & 0xff) << 24 | (peek() & 0xff) << 16 | (peek() & 0xff) << 8 | peek() & 0xff;
+    }
+
+    /**
+     * Read from an absolute position without moving {@link #position()}.
+     * Keeps reading until byteCount bytes are read or the end is reached.
+     * The default seeks by rewinding and skipping, then walks back to the old position;
+     * readers that can seek directly override it.
+     *
+     * @return bytes read, -1 if position is at or past the end
+     */
+    default int read(long position, byte[] buffer, int start, int byteCount) throws IOException {
+        int saved = position();
+        reset();
+        int read = 0;
+        if (skip(position) == position) {
+            while (read < byteCount) {
+                int count = read(buffer, start + read, byteCount - read);
+                if (count <= 0) {
+                    break;
+                }
+                read += count;
+            }
+        }
+        reset();
+        skip(saved);
+        return read == 0 && byteCount > 0 ? -1 : read;
+    }
+
+    /**
+     * @return reader over [offset, offset + length), whose position 0 maps to offset.
+     * Shares content with this reader without copying where the source allows it,
+     * the default copies the range into memory.
+     */
+    default Reader slice(int offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        int count = Math.max(0, read(offset, data, 0, length));
+        return new ByteBufferReader(ByteBuffer.wrap(data, 0, count).slice());
+    }
+
     int available() throws IOException;
 
     /**
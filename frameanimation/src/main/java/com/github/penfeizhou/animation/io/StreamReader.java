@@ -3,13 +3,27 @@ package com.github.penfeizhou.animation.io;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
+ * Reads the stream through a block buffer, so peek and small reads done by the parsers do not
+ * reach the wrapped stream one byte at a time. {@link #position()} counts consumed bytes only,
+ * bytes buffered ahead are not included.
+ *
  * @Author: pengfei.zhou
  * @CreateDate: 2019-05-11
  */
 public class StreamReader extends FilterInputStream implements Reader {
+    private static final int BLOCK_SIZE = 8 * 1024;
     private int position;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int blockPosition;
+    private int blockLimit;
+    /**
+     * Position to return to before the next sequential access, -1 if none. Positional reads leave
+     * the stream where they stopped, so reading frames in file order only ever skips forward.
+     */
+    private int pendingPosition = -1;
 
     public StreamReader(InputStream in) {
         super(in);
@@ -22,30 +36,166 @@ public class StreamReader extends FilterInputStream implements Reader {
 
     @Override
     public byte peek() throws IOException {
-        byte ret = (byte) read();
+        if (pendingPosition >= 0) {
+            restorePosition();
+        }
+        position++;
+        if (blockPosition == blockLimit && !fill()) {
+            return -1;
+        }
+        return block[blockPosition++];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pendingPosition >= 0) {
+            restorePosition();
+        }
+        if (blockPosition == blockLimit && !fill()) {
+            return -1;
+        }
         position++;
-        return ret;
+        return block[blockPosition++] & 0xff;
     }
 
+    /**
+     * Unlike a plain InputStream this keeps reading until byteCount bytes are read or the
+     * stream ends, since the parsers assume whole fields are read at once.
+     */
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        int ret = super.read(b, off, len);
-        position += Math.max(0, ret);
-        return ret;
+        if (pendingPosition >= 0) {
+            restorePosition();
+        }
+        return readBlock(b, off, len);
+    }
+
+    private int readBlock(byte[] b, int off, int len) throws IOException {
+        int read = 0;
+        while (read < len) {
+            int buffered = blockLimit - blockPosition;
+            if (buffered > 0) {
+                int count = Math.min(buffered, len - read);
+                System.arraycopy(block, blockPosition, b, off + read, count);
+                blockPosition += count;
+                read += count;
+            } else if (len - read >= BLOCK_SIZE) {
+                int count = in.read(b, off + read, len - read);
+                if (count <= 0) {
+                    break;
+                }
+                read += count;
+            } else if (!fill()) {
+                break;
+            }
+        }
+        position += read;
+        return read == 0 && len > 0 ? -1 : read;
+    }
+
+    @Override
+    public int readIntLE() throws IOException {
+        if (pendingPosition >= 0) {
+            restorePosition();
+        }
+        if (blockLimit - blockPosition < 4) {
+            return peek() & 0xff | (peek() & 0xff) << 8 | (peek() & 0xff) << 16 | (peek() & 0xff) << 24;
+        }
+        byte[] b = block;
+        int i = blockPosition;
+        blockPosition += 4;
+        position += 4;
+        return b[i] & 0xff | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public int readIntBE() throws IOException {
+        if (pendingPosition >= 0) {
+            restorePosition();
+        }
+        if (blockLimit - blockPosition < 4) {
+            return (peek() & 0xff) << 24 | (peek() & 0xff) << 16 | (peek() & 0xff) << 8 | peek() & 0xff;
+        }
+        byte[] b = block;
+        int i = blockPosition;
+        blockPosition += 4;
+        position += 4;
+        return (b[i] & 0xff) << 24 | (b[i + 1] & 0xff) << 16 | (b[i + 2] & 0xff) << 8 | b[i + 3] & 0xff;
+    }
+
+    /**
+     * A plain stream can only seek forward, so this skips from where the last read stopped and
+     * rewinds only when position lies behind it. {@link #position()} is restored lazily by the
+     * next sequential access instead of after every call.
+     */
+    @Override
+    public int read(long position, byte[] buffer, int start, int byteCount) throws IOException {
+        if (pendingPosition < 0) {
+            pendingPosition = this.position;
+        }
+        if (position < this.position) {
+            rewind();
+        }
+        skipBlock(position - this.position);
+        int read = 0;
+        if (this.position == position) {
+            read = Math.max(0, readBlock(buffer, start, byteCount));
+        }
+        return read == 0 && byteCount > 0 ? -1 : read;
+    }
+
+    /**
+     * Streams can not be shared, the range is copied into memory.
+     */
+    @Override
+    public Reader slice(int offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        int count = Math.max(0, read(offset, data, 0, length));
+        return new ByteBufferReader(ByteBuffer.wrap(data, 0, count).slice());
     }
 
     @Override
     public synchronized void reset() throws IOException {
+        pendingPosition = -1;
+        rewind();
+    }
+
+    private void rewind() throws IOException {
         super.reset();
+        blockPosition = 0;
+        blockLimit = 0;
         position = 0;
     }
 
+    /**
+     * Buffered read ahead would not survive a rewind of the wrapped stream to a mark, so marks
+     * are not supported. {@link #reset()} still rewinds to the start.
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
     @Override
     public long skip(long n) throws IOException {
+        if (pendingPosition >= 0) {
+            restorePosition();
+        }
+        return skipBlock(n);
+    }
+
+    private long skipBlock(long n) throws IOException {
         long toSkip = n;
+        int buffered = (int) Math.min(blockLimit - blockPosition, Math.max(0, toSkip));
+        blockPosition += buffered;
+        toSkip -= buffered;
 
         while (toSkip > 0) {
-            long skipped = super.skip(toSkip);
+            long skipped = in.skip(toSkip);
             if (skipped > 0) {
                 toSkip -= skipped;
             } else {
@@ -53,7 +203,7 @@ public class StreamReader extends FilterInputStream implements Reader {
                 // the stream. To differentiate between temporarily not having more data and
                 // having finished the stream, we read a single byte when we fail to skip any
                 // amount of data.
-                int testEofByte = super.read();
+                int testEofByte = in.read();
                 if (testEofByte == -1) {
                     break;
                 } else {
@@ -66,13 +216,48 @@ public class StreamReader extends FilterInputStream implements Reader {
         return n - toSkip;
     }
 
+    @Override
+    public int available() throws IOException {
+        if (pendingPosition >= 0) {
+            restorePosition();
+        }
+        return blockLimit - blockPosition + in.available();
+    }
+
     @Override
     public int position() {
-        return position;
+        return pendingPosition >= 0 ? pendingPosition : position;
     }
 
     @Override
     public InputStream toInputStream() throws IOException {
+        if (pendingPosition >= 0) {
+            restorePosition();
+        }
         return this;
     }
+
+    /**
+     * Go back to where sequential reading stopped before the last positional reads
+     */
+    private void restorePosition() throws IOException {
+        int target = pendingPosition;
+        pendingPosition = -1;
+        if (target < position) {
+            rewind();
+        }
+        skipBlock(target - position);
+    }
+
+    /**
+     * Refill the block buffer, only called once it is drained
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        int count = in.read(block, 0, BLOCK_SIZE);
+        blockPosition = 0;
+        blockLimit = Math.max(0, count);
+        return count > 0;
+    }
 }
@@ -0,0 +1,60 @@
+package com.github.penfeizhou.animation.loader;
+
+import android.content.res.AssetFileDescriptor;
+
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+import com.github.penfeizhou.animation.io.PooledByteBufferReader;
+import com.github.penfeizhou.animation.io.Reader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @Description: 对APK中未压缩存储的资源直接映射其字节范围，不经过InputStream复制。
+ * 压缩存储的资源无法打开文件描述符，退回到池化的内存拷贝。
+ */
+public abstract class AssetFileDescriptorLoader implements Loader {
+
+    /**
+     * @return descriptor of the stored entry, throws for compressed entries
+     */
+    protected abstract AssetFileDescriptor openFd() throws IOException;
+
+    protected abstract InputStream getInputStream() throws IOException;
+
+    @Override
+    public synchronized Reader obtain() throws IOException {
+        AssetFileDescriptor fd = null;
+        try {
+            fd = openFd();
+        } catch (IOException e) {
+            // 压缩存储，走内存拷贝
+        }
+        if (fd != null) {
+            FileInputStream inputStream = fd.createInputStream();
+            try {
+                FileChannel channel = inputStream.getChannel();
+                long length = fd.getLength();
+                if (length == AssetFileDescriptor.UNKNOWN_LENGTH) {
+                    length = channel.size() - fd.getStartOffset();
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), length);
+                return new ByteBufferReader(buffer);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                // 映射在关闭描述符后依然有效
+                inputStream.close();
+            }
+        }
+        InputStream inputStream = getInputStream();
+        try {
+            return PooledByteBufferReader.copyOf(inputStream, inputStream.available());
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.penfeizhou.animation.loader;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @Description: 从Asset中加载，未压缩时直接映射
+ */
+public class AssetMappedLoader extends AssetFileDescriptorLoader {
+
+    private final Context mContext;
+    private final String mAssetName;
+
+    public AssetMappedLoader(Context context, String assetName) {
+        mContext = context.getApplicationContext();
+        mAssetName = assetName;
+    }
+
+    @Override
+    protected AssetFileDescriptor openFd() throws IOException {
+        return mContext.getAssets().openFd(mAssetName);
+    }
+
+    @Override
+    protected InputStream getInputStream() throws IOException {
+        return mContext.getAssets().open(mAssetName);
+    }
+}
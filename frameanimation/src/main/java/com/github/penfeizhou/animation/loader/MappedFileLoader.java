@@ -0,0 +1,57 @@
+package com.github.penfeizhou.animation.loader;
+
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+import com.github.penfeizhou.animation.io.FileChannelReader;
+import com.github.penfeizhou.animation.io.Reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @Description: 以内存映射方式从文件加载，reset与skip为O(1)，不再重新打开文件。
+ * 超过映射上限或映射失败的文件退回FileChannel随机读。
+ */
+public class MappedFileLoader implements Loader {
+    public static final long DEFAULT_MAX_MAP_SIZE = 64 * 1024 * 1024;
+
+    private final File mFile;
+    private final long mMaxMapSize;
+
+    public MappedFileLoader(String path) {
+        this(new File(path), DEFAULT_MAX_MAP_SIZE);
+    }
+
+    /**
+     * @param maxMapSize files larger than this are read with positional reads instead of mapped
+     */
+    public MappedFileLoader(File file, long maxMapSize) {
+        mFile = file;
+        mMaxMapSize = Math.min(maxMapSize, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized Reader obtain() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size <= mMaxMapSize) {
+                try {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    // 映射在关闭文件后依然有效
+                    file.close();
+                    return new ByteBufferReader(buffer);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            return new FileChannelReader(file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.penfeizhou.animation.loader;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @Description: 从资源加载，未压缩时直接映射
+ */
+public class ResourceMappedLoader extends AssetFileDescriptorLoader {
+    private final Context mContext;
+    private final int mResId;
+
+    public ResourceMappedLoader(Context context, int resId) {
+        mContext = context.getApplicationContext();
+        mResId = resId;
+    }
+
+    @Override
+    protected AssetFileDescriptor openFd() throws IOException {
+        try {
+            return mContext.getResources().openRawResourceFd(mResId);
+        } catch (Resources.NotFoundException e) {
+            // 压缩存储的资源没有文件描述符
+            return null;
+        }
+    }
+
+    @Override
+    protected InputStream getInputStream() throws IOException {
+        return mContext.getResources().openRawResource(mResId);
+    }
+}
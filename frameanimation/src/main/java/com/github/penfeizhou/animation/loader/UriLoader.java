@@ -0,0 +1,74 @@
+package com.github.penfeizhou.animation.loader;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+import com.github.penfeizhou.animation.io.FileChannelReader;
+import com.github.penfeizhou.animation.io.PooledByteBufferReader;
+import com.github.penfeizhou.animation.io.Reader;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @Description: 从content://等Uri加载，通过ParcelFileDescriptor映射或随机读，
+ * 与文件一样支持O(1)的reset与skip。管道等无法定位的描述符退回内存拷贝。
+ */
+public class UriLoader implements Loader {
+    private final Context mContext;
+    private final Uri mUri;
+    private final long mMaxMapSize;
+
+    public UriLoader(Context context, Uri uri) {
+        this(context, uri, MappedFileLoader.DEFAULT_MAX_MAP_SIZE);
+    }
+
+    /**
+     * @param maxMapSize content larger than this is read with positional reads instead of mapped
+     */
+    public UriLoader(Context context, Uri uri, long maxMapSize) {
+        mContext = context.getApplicationContext();
+        mUri = uri;
+        mMaxMapSize = Math.min(maxMapSize, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized Reader obtain() throws IOException {
+        ParcelFileDescriptor descriptor = mContext.getContentResolver().openFileDescriptor(mUri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException(String.valueOf(mUri));
+        }
+        long size = descriptor.getStatSize();
+        FileInputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+        try {
+            if (size < 0) {
+                // 管道或socket，只能顺序读取
+                try {
+                    return PooledByteBufferReader.copyOf(inputStream, 0);
+                } finally {
+                    inputStream.close();
+                }
+            }
+            FileChannel channel = inputStream.getChannel();
+            if (size <= mMaxMapSize) {
+                try {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    // 映射在关闭描述符后依然有效
+                    inputStream.close();
+                    return new ByteBufferReader(buffer);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            return new FileChannelReader(channel, inputStream);
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+}
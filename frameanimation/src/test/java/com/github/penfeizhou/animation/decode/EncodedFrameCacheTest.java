@@ -0,0 +1,82 @@
+package com.github.penfeizhou.animation.decode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EncodedFrameCacheTest {
+    @Test
+    public void put_copiesTheValidBytes() {
+        EncodedFrameCache cache = new EncodedFrameCache(16);
+        byte[] buffer = {1, 2, 3, 4, 5};
+        byte[] cached = cache.put(0, buffer, 3);
+        assertNotSame(buffer, cached);
+        assertArrayEquals(new byte[]{1, 2, 3}, cached);
+        assertSame(cached, cache.get(0));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void cyclicPlaybackLargerThanBudget_keepsTheFirstFrames() {
+        EncodedFrameCache cache = new EncodedFrameCache(25);
+        byte[] frame = new byte[10];
+        for (int loop = 0; loop < 3; loop++) {
+            for (int i = 0; i < 5; i++) {
+                if (cache.get(i) == null) {
+                    cache.put(i, frame, frame.length);
+                }
+            }
+        }
+        // frames 0 and 1 stay pinned, 2..4 miss every loop without being copied
+        assertEquals(4, cache.hitCount());
+        assertEquals(11, cache.missCount());
+        assertEquals(20, cache.size());
+        assertSame(frame, cache.put(4, frame, frame.length));
+        assertNull(cache.get(4));
+    }
+
+    @Test
+    public void canPut_tracksTheRemainingBudget() {
+        EncodedFrameCache cache = new EncodedFrameCache(8);
+        assertTrue(cache.canPut(8));
+        cache.put(3, new byte[5], 5);
+        assertTrue(cache.canPut(3));
+        assertFalse(cache.canPut(4));
+        assertEquals(8, cache.maxSize());
+    }
+
+    @Test
+    public void replacingAnEntry_countsItsBytesAsFree() {
+        EncodedFrameCache cache = new EncodedFrameCache(10);
+        cache.put(0, new byte[4], 4);
+        cache.put(1, new byte[6], 6);
+        assertFalse(cache.canPut(5));
+        // entry 1 is given back before the new bytes are counted
+        assertTrue(cache.canPut(1, 6));
+        assertFalse(cache.canPut(1, 7));
+        byte[] replaced = cache.put(1, new byte[5], 5);
+        assertSame(replaced, cache.get(1));
+        assertEquals(9, cache.size());
+        // too large even without the old entry, which stays
+        byte[] large = new byte[7];
+        assertSame(large, cache.put(1, large, 7));
+        assertSame(replaced, cache.get(1));
+        assertEquals(9, cache.size());
+    }
+
+    @Test
+    public void evictAll_freesTheBudget() {
+        EncodedFrameCache cache = new EncodedFrameCache(8);
+        cache.put(0, new byte[8], 8);
+        cache.evictAll();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(0));
+        assertTrue(cache.canPut(8));
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.penfeizhou.animation.decode;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the Java and the native blending kernel of {@link FrameCompositor}, blending
+ * one full canvas frame with transparent, translucent and opaque pixels OVER the canvas.
+ * The native kernel is only measured when its library is on java.library.path, which a host
+ * build of src/main/cpp provides. The comparison against Canvas.drawBitmap runs on a device,
+ * see FrameCompositorCanvasBenchmark in androidTest.
+ * Skipped unless run with -Pbenchmark=true, e.g.
+ * ./gradlew :frameanimation:testDebugUnitTest -Pbenchmark=true --tests '*FrameCompositorBenchmark'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCompositorBenchmark {
+    @Param({"java", "native"})
+    public String kernel;
+    @Param({"64", "256", "1024"})
+    public int size;
+
+    private FrameCompositor compositor;
+    private int[] frame;
+
+    @BeforeClass
+    public static void checkEnabled() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        FrameCompositor.setNativeKernelEnabled(true);
+        String[] kernels = FrameCompositor.isNativeKernelEnabled() ? new String[]{"java", "native"} : new String[]{"java"};
+        new Runner(new OptionsBuilder()
+                .include(FrameCompositorBenchmark.class.getSimpleName())
+                .param("kernel", kernels)
+                .build()).run();
+    }
+
+    /**
+     * Premultiplied pixels, a third each transparent, translucent and opaque, in runs
+     */
+    static int[] frame(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int alpha;
+            switch ((i / 7 + i / width) % 3) {
+                case 0:
+                    alpha = 0;
+                    break;
+                case 1:
+                    alpha = 0x20 + (i * 13 & 0xbf);
+                    break;
+                default:
+                    alpha = 0xff;
+                    break;
+            }
+            int color = i * 0x9e3779b9;
+            pixels[i] = alpha << 24
+                    | (color >>> 16 & 0xff) * alpha / 255 << 16
+                    | (color >>> 8 & 0xff) * alpha / 255 << 8
+                    | (color & 0xff) * alpha / 255;
+        }
+        return pixels;
+    }
+
+    @Setup
+    public void setup() {
+        FrameCompositor.setNativeKernelEnabled("native".equals(kernel));
+        compositor = new FrameCompositor(size, size);
+        compositor.clear(0xff336699);
+        frame = frame(size, size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FrameCompositor.setNativeKernelEnabled(true);
+    }
+
+    @Benchmark
+    public int[] blendOver() {
+        compositor.blend(frame, 0, size, 0, 0, size, size, FrameCompositor.BLEND_OP_OVER);
+        return compositor.getCanvas();
+    }
+
+    /**
+     * The frame is copied in first, otherwise the canvas is opaque after the first call
+     */
+    @Benchmark
+    public int[] fillBehind() {
+        compositor.blend(frame, 0, size, 0, 0, size, size, FrameCompositor.BLEND_OP_SOURCE);
+        compositor.fillBehind(0xff102030);
+        return compositor.getCanvas();
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.penfeizhou.animation.decode;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameCompositorTest {
+    private static final int RED = 0xff0000ff;
+    private static final int BLUE = 0xffff0000;
+
+    @After
+    public void restoreKernel() {
+        FrameCompositor.setNativeKernelEnabled(true);
+    }
+
+    @Test
+    public void colorToPixel_premultipliesAndSwapsChannels() {
+        assertEquals(0xff332211, FrameCompositor.colorToPixel(0xff112233));
+        assertEquals(0, FrameCompositor.colorToPixel(0x00ffffff));
+        // 0x80 * 0xff / 255 = 0x80
+        assertEquals(0x80000080, FrameCompositor.colorToPixel(0x80ff0000));
+    }
+
+    @Test
+    public void blendSource_overwritesIncludingAlpha() {
+        FrameCompositor compositor = new FrameCompositor(2, 1);
+        compositor.clear(RED);
+        compositor.blend(new int[]{0, BLUE}, 0, 2, 0, 0, 2, 1, FrameCompositor.BLEND_OP_SOURCE);
+        assertArrayEquals(new int[]{0, BLUE}, compositor.getCanvas());
+    }
+
+    @Test
+    public void blendOver_compositesPremultiplied() {
+        FrameCompositor compositor = new FrameCompositor(3, 1);
+        compositor.clear(RED);
+        int halfBlue = 0x80800000;
+        compositor.blend(new int[]{0, BLUE, halfBlue}, 0, 3, 0, 0, 3, 1, FrameCompositor.BLEND_OP_OVER);
+        int[] canvas = compositor.getCanvas();
+        assertEquals(RED, canvas[0]);
+        assertEquals(BLUE, canvas[1]);
+        // red is scaled by 0x7f / 0xff under the half transparent blue
+        assertEquals(0xff80007f, canvas[2]);
+    }
+
+    @Test
+    public void blend_clipsToCanvas() {
+        FrameCompositor compositor = new FrameCompositor(2, 2);
+        int[] src = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        compositor.blend(src, 0, 3, -1, -1, 3, 3, FrameCompositor.BLEND_OP_SOURCE);
+        assertArrayEquals(new int[]{5, 6, 8, 9}, compositor.getCanvas());
+        compositor.blend(src, 0, 3, 2, 0, 3, 3, FrameCompositor.BLEND_OP_SOURCE);
+        assertArrayEquals(new int[]{5, 6, 8, 9}, compositor.getCanvas());
+    }
+
+    @Test
+    public void disposeBackground_fillsOnlyTheFrameRect() {
+        FrameCompositor compositor = new FrameCompositor(3, 2);
+        compositor.clear(RED);
+        compositor.setDisposal(FrameCompositor.DISPOSE_OP_BACKGROUND, 0, 1, 0, 3, 1);
+        compositor.blend(new int[]{BLUE, BLUE}, 0, 2, 1, 0, 2, 1, FrameCompositor.BLEND_OP_SOURCE);
+        compositor.dispose();
+        assertArrayEquals(new int[]{RED, 0, 0, RED, RED, RED}, compositor.getCanvas());
+    }
+
+    @Test
+    public void disposePrevious_restoresTheCanvasBeforeTheFrame() {
+        FrameCompositor compositor = new FrameCompositor(2, 2);
+        int[] before = {1, 2, 3, 4};
+        compositor.blend(before, 0, 2, 0, 0, 2, 2, FrameCompositor.BLEND_OP_SOURCE);
+        compositor.setDisposal(FrameCompositor.DISPOSE_OP_PREVIOUS, 0, 0, 1, 2, 3);
+        compositor.blend(new int[]{BLUE, BLUE}, 0, 2, 0, 1, 2, 1, FrameCompositor.BLEND_OP_SOURCE);
+        assertArrayEquals(new int[]{1, 2, BLUE, BLUE}, compositor.getCanvas());
+        compositor.dispose();
+        assertArrayEquals(before, compositor.getCanvas());
+        // disposal runs once
+        compositor.blend(new int[]{BLUE}, 0, 1, 0, 0, 1, 1, FrameCompositor.BLEND_OP_SOURCE);
+        compositor.dispose();
+        assertEquals(BLUE, compositor.getCanvas()[0]);
+    }
+
+    @Test
+    public void clear_dropsPendingDisposal() {
+        FrameCompositor compositor = new FrameCompositor(1, 1);
+        compositor.setDisposal(FrameCompositor.DISPOSE_OP_BACKGROUND, BLUE, 0, 0, 1, 1);
+        compositor.clear(RED);
+        compositor.dispose();
+        assertEquals(RED, compositor.getCanvas()[0]);
+    }
+
+    @Test
+    public void fillBehind_keepsOpaqueAndFillsTransparent() {
+        FrameCompositor compositor = new FrameCompositor(3, 1);
+        compositor.blend(new int[]{0, BLUE, 0x80800000}, 0, 3, 0, 0, 3, 1, FrameCompositor.BLEND_OP_SOURCE);
+        compositor.fillBehind(RED);
+        assertArrayEquals(new int[]{RED, BLUE, 0xff80007f}, compositor.getCanvas());
+        // a transparent color is a no-op
+        compositor.fillBehind(0);
+        assertArrayEquals(new int[]{RED, BLUE, 0xff80007f}, compositor.getCanvas());
+    }
+
+    @Test
+    public void copyTo_writesTheWholeCanvas() {
+        FrameCompositor compositor = new FrameCompositor(2, 1);
+        compositor.blend(new int[]{RED, BLUE}, 0, 2, 0, 0, 2, 1, FrameCompositor.BLEND_OP_SOURCE);
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        compositor.copyTo(buffer);
+        assertEquals(RED, buffer.getInt(0));
+        assertEquals(BLUE, buffer.getInt(4));
+        compositor.copyTo(null);
+    }
+
+    /**
+     * A clipped frame large enough for the native kernel blended over a translucent canvas
+     */
+    private static int[] composite(boolean nativeKernel) {
+        FrameCompositor.setNativeKernelEnabled(nativeKernel);
+        int[] frame = FrameCompositorBenchmark.frame(120, 90);
+        FrameCompositor compositor = new FrameCompositor(100, 80);
+        compositor.clear(0x80402010);
+        compositor.blend(frame, 0, 120, -7, 5, 120, 90, FrameCompositor.BLEND_OP_OVER);
+        compositor.blend(frame, 0, 120, 30, -20, 120, 90, FrameCompositor.BLEND_OP_OVER);
+        compositor.fillBehind(RED);
+        return compositor.getCanvas();
+    }
+
+    @Test
+    public void nativeKernel_matchesJava() {
+        FrameCompositor.setNativeKernelEnabled(true);
+        Assume.assumeTrue("animation-compositor not on java.library.path",
+                FrameCompositor.isNativeKernelEnabled());
+        assertTrue((100 - 30) * 60 >= FrameCompositor.NATIVE_MIN_PIXELS);
+        assertArrayEquals(composite(false), composite(true));
+    }
+}
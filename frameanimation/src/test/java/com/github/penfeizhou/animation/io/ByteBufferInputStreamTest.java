@@ -0,0 +1,161 @@
+package com.github.penfeizhou.animation.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ByteBufferInputStreamTest {
+    private static final int SIZE = 1000;
+    private static final byte[] DATA = new byte[SIZE];
+
+    static {
+        for (int i = 0; i < SIZE; i++) {
+            DATA[i] = (byte) (i * 31 + 7);
+        }
+    }
+
+    /**
+     * DATA in every kind of buffer a reader is given, each with position 0 and limit SIZE
+     */
+    private static Map<String, ByteBuffer> buffers() throws IOException {
+        Map<String, ByteBuffer> buffers = new LinkedHashMap<>();
+        buffers.put("heap", ByteBuffer.wrap(DATA.clone()));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(SIZE);
+        direct.put(DATA);
+        direct.position(0);
+        buffers.put("direct", direct);
+
+        // slices start inside a larger buffer, arrayOffset is nonzero for the heap one
+        byte[] larger = new byte[SIZE + 20];
+        System.arraycopy(DATA, 0, larger, 13, SIZE);
+        buffers.put("heap slice", ByteBuffer.wrap(larger, 13, SIZE).slice());
+        ByteBuffer largerDirect = ByteBuffer.allocateDirect(SIZE + 20);
+        largerDirect.position(13);
+        largerDirect.put(DATA);
+        largerDirect.position(13);
+        largerDirect.limit(13 + SIZE);
+        buffers.put("direct slice", largerDirect.slice());
+
+        File file = File.createTempFile("ByteBufferInputStreamTest", null);
+        file.deleteOnExit();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.write(larger);
+            buffers.put("mapped slice", out.getChannel().map(FileChannel.MapMode.READ_ONLY, 13, SIZE));
+        }
+        return buffers;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[77];
+        int count;
+        while ((count = in.read(buffer, 0, buffer.length)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void toInputStream_readsTheWholeBufferFromAnyKind() throws IOException {
+        for (Map.Entry<String, ByteBuffer> entry : buffers().entrySet()) {
+            ByteBufferReader reader = new ByteBufferReader(entry.getValue());
+            reader.skip(100);
+            InputStream in = reader.toInputStream();
+            assertEquals(entry.getKey(), SIZE, in.available());
+            assertArrayEquals(entry.getKey(), DATA, readAll(in));
+            assertEquals(entry.getKey(), -1, in.read());
+            assertEquals(entry.getKey(), -1, in.read(new byte[4], 0, 4));
+            assertEquals(entry.getKey(), 0, in.read(new byte[4], 0, 0));
+            // the reader keeps its own position
+            assertEquals(entry.getKey(), 100, reader.position());
+        }
+    }
+
+    @Test
+    public void reset_goesBackToTheMark() throws IOException {
+        for (Map.Entry<String, ByteBuffer> entry : buffers().entrySet()) {
+            InputStream in = new ByteBufferReader(entry.getValue()).toInputStream();
+            assertTrue(in.markSupported());
+            in.read(new byte[10], 0, 10);
+            in.mark(1);
+            // past the readlimit, the bytes are never dropped
+            byte[] first = new byte[300];
+            assertEquals(300, in.read(first, 0, first.length));
+            in.reset();
+            byte[] second = new byte[300];
+            assertEquals(300, in.read(second, 0, second.length));
+            assertArrayEquals(entry.getKey(), Arrays.copyOfRange(DATA, 10, 310), first);
+            assertArrayEquals(entry.getKey(), first, second);
+
+            // a reset can be repeated, also from the end of the stream
+            readAll(in);
+            in.reset();
+            assertEquals(entry.getKey(), DATA[10] & 0xff, in.read());
+            assertEquals(entry.getKey(), SIZE - 11, in.available());
+        }
+    }
+
+    @Test
+    public void reset_withoutMarkGoesBackToTheStart() throws IOException {
+        for (Map.Entry<String, ByteBuffer> entry : buffers().entrySet()) {
+            InputStream in = new ByteBufferReader(entry.getValue()).toInputStream();
+            assertEquals(entry.getKey(), 500, in.skip(500));
+            in.reset();
+            assertArrayEquals(entry.getKey(), DATA, readAll(in));
+
+            // or to the position of the buffer it was created over
+            ByteBuffer buffer = entry.getValue().duplicate();
+            buffer.position(42);
+            in = new ByteBufferInputStream(buffer);
+            in.skip(100);
+            in.reset();
+            assertArrayEquals(entry.getKey(), Arrays.copyOfRange(DATA, 42, SIZE), readAll(in));
+        }
+    }
+
+    @Test
+    public void skip_staysWithinTheLimit() throws IOException {
+        for (Map.Entry<String, ByteBuffer> entry : buffers().entrySet()) {
+            ByteBuffer buffer = entry.getValue().duplicate();
+            buffer.limit(600);
+            InputStream in = new ByteBufferInputStream(buffer);
+            assertEquals(entry.getKey(), 0, in.skip(-5));
+            assertEquals(entry.getKey(), 550, in.skip(550));
+            in.mark(0);
+            assertEquals(entry.getKey(), 50, in.skip(1000));
+            assertEquals(entry.getKey(), 0, in.available());
+            assertEquals(entry.getKey(), -1, in.read());
+            in.reset();
+            assertArrayEquals(entry.getKey(), Arrays.copyOfRange(DATA, 550, 600), readAll(in));
+        }
+    }
+
+    @Test
+    public void streams_areIndependentViews() throws IOException {
+        for (Map.Entry<String, ByteBuffer> entry : buffers().entrySet()) {
+            ByteBufferReader reader = new ByteBufferReader(entry.getValue());
+            InputStream first = reader.toInputStream();
+            InputStream second = reader.toInputStream();
+            first.skip(700);
+            first.mark(0);
+            assertEquals(entry.getKey(), DATA[0] & 0xff, second.read());
+            second.reset();
+            assertEquals(entry.getKey(), 300, first.available());
+            assertEquals(entry.getKey(), SIZE, second.available());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.penfeizhou.animation.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamReaderTest {
+    private static final int FILE_SIZE = 64 * 1024;
+    private static final int FRAME_COUNT = 32;
+
+    /**
+     * Counts the bytes taken from the wrapped stream, read or skipped
+     */
+    private static class CountingStream extends ByteArrayInputStream {
+        long consumed;
+
+        CountingStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read() {
+            int value = super.read();
+            if (value >= 0) {
+                consumed++;
+            }
+            return value;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int count = super.read(b, off, len);
+            consumed += Math.max(0, count);
+            return count;
+        }
+
+        @Override
+        public synchronized long skip(long n) {
+            long count = super.skip(n);
+            consumed += count;
+            return count;
+        }
+    }
+
+    private static byte[] content() {
+        byte[] data = new byte[FILE_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + (i >> 8));
+        }
+        return data;
+    }
+
+    @Test
+    public void positionalReads_doNotRewalkTheWholeStream() throws IOException {
+        byte[] data = content();
+        CountingStream in = new CountingStream(data);
+        StreamReader reader = new StreamReader(in);
+        // the parser walks the whole file first
+        reader.skip(FILE_SIZE);
+        assertEquals(FILE_SIZE, reader.position());
+        in.consumed = 0;
+
+        int frameSize = FILE_SIZE / FRAME_COUNT;
+        byte[] frame = new byte[frameSize / 2];
+        int loops = 3;
+        for (int loop = 0; loop < loops; loop++) {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                int offset = i * frameSize + 7;
+                assertEquals(frame.length, reader.read(offset, frame, 0, frame.length));
+                byte[] expected = new byte[frame.length];
+                System.arraycopy(data, offset, expected, 0, expected.length);
+                assertArrayEquals(expected, frame);
+                assertEquals(FILE_SIZE, reader.position());
+            }
+        }
+        // one pass over the file per loop, restoring after every read would take FRAME_COUNT
+        assertTrue("consumed " + in.consumed, in.consumed <= (long) loops * FILE_SIZE);
+    }
+
+    @Test
+    public void sequentialRead_resumesAfterPositionalRead() throws IOException {
+        byte[] data = content();
+        StreamReader reader = new StreamReader(new CountingStream(data));
+        reader.skip(100);
+        byte[] buffer = new byte[16];
+        assertEquals(16, reader.read(5000, buffer, 0, 16));
+        assertEquals(16, reader.read(20, buffer, 0, 16));
+        assertEquals(100, reader.position());
+        assertEquals(data[100] & 0xff, reader.read());
+        assertEquals(data[101], reader.peek());
+        assertEquals(102, reader.position());
+        assertEquals(FILE_SIZE - 102, reader.available());
+    }
+
+    @Test
+    public void positionalReadPastTheEnd_returnsMinusOne() throws IOException {
+        StreamReader reader = new StreamReader(new CountingStream(new byte[10]));
+        assertEquals(-1, reader.read(10, new byte[4], 0, 4));
+        assertEquals(2, reader.read(8, new byte[4], 0, 4));
+        assertEquals(0, reader.position());
+    }
+
+    @Test
+    public void defaultRead_restoresPositionOfAnyReader() throws IOException {
+        byte[] data = content();
+        Reader reader = new MinimalReader(data);
+        reader.skip(40);
+        byte[] buffer = new byte[8];
+        assertEquals(8, reader.read(1000, buffer, 0, 8));
+        assertEquals(data[1000], buffer[0]);
+        assertEquals(40, reader.position());
+        Reader slice = reader.slice(1000, 8);
+        assertEquals(data[1000], slice.peek());
+        assertEquals(40, reader.position());
+    }
+
+    /**
+     * A third-party reader implementing only the sequential methods
+     */
+    private static class MinimalReader implements Reader {
+        private final byte[] data;
+        private int position;
+
+        MinimalReader(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public long skip(long total) {
+            int count = (int) Math.min(total, data.length - position);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public byte peek() {
+            return data[position++];
+        }
+
+        @Override
+        public void reset() {
+            position = 0;
+        }
+
+        @Override
+        public int position() {
+            return position;
+        }
+
+        @Override
+        public int read(byte[] buffer, int start, int byteCount) {
+            // hand out at most 3 bytes at a time
+            int count = Math.min(Math.min(byteCount, 3), data.length - position);
+            System.arraycopy(data, position, buffer, start, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return data.length - position;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InputStream toInputStream() {
+            return new ByteArrayInputStream(data);
+        }
+    }
+}
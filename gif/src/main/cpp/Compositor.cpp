@@ -0,0 +1,24 @@
+#include "Compositor.h"
+#include "common.h"
+
+#include <android/bitmap.h>
+
+bool lockBitmap(JNIEnv *env, jobject bitmap, PixelCanvas &canvas) {
+    AndroidBitmapInfo info;
+    if (AndroidBitmap_getInfo(env, bitmap, &info) != ANDROID_BITMAP_RESULT_SUCCESS
+        || info.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
+        LOGE("Bitmap is not RGBA_8888");
+        return false;
+    }
+    void *pixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, bitmap, &pixels) != ANDROID_BITMAP_RESULT_SUCCESS
+        || pixels == nullptr) {
+        LOGE("Failed to lock bitmap pixels");
+        return false;
+    }
+    canvas.pixels = static_cast<uint32_t *>(pixels);
+    canvas.width = info.width;
+    canvas.height = info.height;
+    canvas.stride = info.stride / sizeof(uint32_t);
+    return true;
+}
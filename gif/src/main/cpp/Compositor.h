@@ -0,0 +1,42 @@
+#ifndef APNG4ANDROID_COMPOSITOR_H
+#define APNG4ANDROID_COMPOSITOR_H
+
+#include <jni.h>
+#include <stdint.h>
+#include <stddef.h>
+#include <string.h>
+
+// Row kernels shared with the animation-compositor library of frameanimation
+#include "PixelRows.h"
+
+/**
+ * Clip the rect (x, y, w, h) against a width * height canvas.
+ * @return false if nothing is left to draw
+ */
+static inline bool clipRect(int width, int height, int &x, int &y, int &w, int &h,
+                            int &skipX, int &skipY) {
+    skipX = x < 0 ? -x : 0;
+    skipY = y < 0 ? -y : 0;
+    int right = x + w < width ? x + w : width;
+    int bottom = y + h < height ? y + h : height;
+    x += skipX;
+    y += skipY;
+    w = right - x;
+    h = bottom - y;
+    return w > 0 && h > 0;
+}
+
+struct PixelCanvas {
+    uint32_t *pixels;
+    int width;
+    int height;
+    // in pixels
+    int stride;
+};
+
+/**
+ * Lock the pixels of an RGBA_8888 bitmap, unlock with AndroidBitmap_unlockPixels once done.
+ */
+bool lockBitmap(JNIEnv *env, jobject bitmap, PixelCanvas &canvas);
+
+#endif //APNG4ANDROID_COMPOSITOR_H
@@ -1,199 +1,564 @@
 #include <jni.h>
-#include <string>
-#include <vector>
+#include <stdint.h>
+#include <string.h>
 
 #include "common.h"
-#include "Reader.h"
+#include "Compositor.h"
 
-struct Slice {
-    int *ptr_data;
-    size_t len_data;
-};
+#include <android/bitmap.h>
 
-void uncompressLZW(
-        JNIEnv *env,
-        jobject /* this */,
-        jobject jReader,
-        jintArray colorTable,
-        jint transparentColorIndex,
-        jintArray pixels,
-        jint width,
-        jint height,
-        jint lzwMinCodeSize,
-        jboolean interlace,
-        jbyteArray buffer) {
-    Reader reader(env, jReader, buffer);
-    char buf[0xff];
-    jboolean b = JNI_FALSE;
-    int *pixelsBuffer = env->GetIntArrayElements(pixels, &b);
-    size_t idx_pixel = 0;
-    size_t offset_data = 0;
-    size_t idx_data = 0;
-    size_t bits = 0;
-    size_t code_size = lzwMinCodeSize + 1;
-    size_t pixelsSize = width * height;
-    int datum = 0;
-    int code_clear = 1 << lzwMinCodeSize;
-    int code_end = code_clear + 1;
-    int code;
-
-    std::vector<Slice> table_string;
-
-    Slice prefix;
-    prefix.len_data = 0;
-    prefix.ptr_data = nullptr;
-    int table_max_size = (1 << 12) - code_end - 1;
-    while (idx_pixel < pixelsSize) {
-        if (offset_data == 0) {
-            offset_data = reader.peek() & 0xff;
-            if (offset_data <= 0) {
-                // DECODE ERROR
-                break;
-            }
-            reader.read(buf, offset_data);
-            idx_data = 0;
-        }
-        datum += (buf[idx_data] & 0xff) << bits;
-        bits += 8;
-        idx_data++;
-        offset_data--;
-        while (bits >= code_size) {
-            code = datum & ((1 << code_size) - 1);
-            datum >>= code_size;
-            bits -= code_size;
-            if (code == code_clear) {
-                table_string.clear();
-                code_size = lzwMinCodeSize + 1;
-                prefix.len_data = 0;
-                prefix.ptr_data = nullptr;
-                continue;
-            } else if (code == code_end) {
-                break;
-            } else {
-                if (prefix.len_data > 0 && prefix.ptr_data) {
-                    //Add to String Table
-                    Slice slice;
-                    int sufix;
-                    // Find suffix
-                    if (code > code_end) {
-                        if (code - code_end > table_string.size()) {
-                            sufix = *prefix.ptr_data;
-                            //output current slice to buffer
-                            memcpy(pixelsBuffer + idx_pixel, prefix.ptr_data,
-                                   prefix.len_data * sizeof(int));
-                            //update slice ptr,so that this continious memory includes sufix
-                            slice.ptr_data = pixelsBuffer + idx_pixel;
-                            idx_pixel += prefix.len_data;
-                            pixelsBuffer[idx_pixel++] = sufix;
-                            slice.len_data = prefix.len_data + 1;
-                            prefix.ptr_data = slice.ptr_data;
-                            prefix.len_data = slice.len_data;
-                        } else {
-                            // Get Prefix's first char as sufix
-                            Slice current = table_string.at(
-                                    code - code_end - 1);
-                            // sufix = *current.ptr_data;
-                            // update ptr so that new table item contain sufix
-                            slice.ptr_data = pixelsBuffer + idx_pixel - prefix.len_data;
-                            slice.len_data = prefix.len_data + 1;
-                            memcpy(pixelsBuffer + idx_pixel, current.ptr_data,
-                                   current.len_data *
-                                   sizeof(int));
-                            idx_pixel += current.len_data;
-
-                            prefix.ptr_data = current.ptr_data;
-                            prefix.len_data = current.len_data;
-                        }
-                    } else {
-                        sufix = code;
-                        pixelsBuffer[idx_pixel] = sufix;
-                        // It's been copied to pixelsBuffer,so just move forward so that sufix can be contained
-                        slice.len_data = prefix.len_data + 1;
-                        slice.ptr_data = pixelsBuffer + idx_pixel - prefix.len_data;
-                        // Set prefix to just one code
-                        prefix.len_data = 1;
-                        prefix.ptr_data = pixelsBuffer + idx_pixel;
-                        idx_pixel++;
-                    }
-                    if (table_string.size() < table_max_size) {
-                        //Add to string table
-                        table_string.push_back(slice);
-                        if (table_string.size() >= (1 << code_size) - code_end - 1
-                            && table_string.size() < table_max_size) {
-                            code_size++;
-                        }
+// LZW codes are at most 12 bits
+#define LZW_MAX_CODES 4096
+#define LZW_MAX_CODE_SIZE 12
+
+/**
+ * Receives decoded palette indices in stream order and writes their colors row by row,
+ * following the four interlace passes when the frame is interlaced.
+ * The frame sits at (frameX, frameY) of the full size canvas. With sample > 1 only pixels whose
+ * canvas coordinates are multiples of sample are kept, each landing at (X / sample, Y / sample)
+ * of the sampled destination, so every frame samples the same grid.
+ * Pixel is uint32_t for colors, or uint8_t for palette indices with an identity palette.
+ */
+template<typename Pixel>
+struct FrameOutput {
+    // sampled destination
+    Pixel *pixels;
+    int dstWidth;
+    int dstHeight;
+    // in pixels
+    int stride;
+    // frame geometry in full size canvas coordinates
+    int frameX;
+    int frameY;
+    int width;
+    int height;
+    int sample;
+    // palette with the transparent index already mapped to 0
+    Pixel palette[256];
+    bool interlace;
+    // BLEND_OP_SOURCE writes transparent pixels too, BLEND_OP_OVER keeps what is below them
+    int blendOp;
+
+    int x;
+    int y;
+    int pass;
+    bool done;
+    // null while the current row is skipped or clipped
+    Pixel *row;
+    // destination column of the next kept pixel
+    int dstX;
+    // pixels to skip before the next kept one
+    int skip;
+    int firstSkip;
+    int firstDstX;
+
+    void start() {
+        x = 0;
+        y = 0;
+        pass = 0;
+        done = width <= 0 || height <= 0;
+        firstSkip = (sample - frameX % sample) % sample;
+        firstDstX = (frameX + firstSkip) / sample;
+        startRow();
+    }
+
+    inline void put(uint8_t index) {
+        putColor(palette[index]);
+    }
+
+    inline void putColor(Pixel color) {
+        if (row != nullptr) {
+            if (skip == 0) {
+                if (dstX < dstWidth) {
+                    if (color != 0 || blendOp == BLEND_OP_SOURCE) {
+                        row[dstX] = color;
                     }
-                } else {
-                    pixelsBuffer[idx_pixel] = code & 0xff;
-                    prefix.ptr_data = pixelsBuffer + idx_pixel;
-                    prefix.len_data = 1;
-                    idx_pixel++;
                 }
+                dstX++;
+                skip = sample - 1;
+            } else {
+                skip--;
             }
         }
+        if (++x == width) {
+            nextRow();
+        }
     }
 
-    int *colors = env->GetIntArrayElements(colorTable, &b);
-    int idx;
-    for (int loop = 0; loop < idx_pixel; loop++) {
-        idx = pixelsBuffer[loop] & 0xff;
-        if (idx == transparentColorIndex) {
-            pixelsBuffer[loop] = 0;
+    void nextRow() {
+        static const int kPassStart[] = {0, 4, 2, 1};
+        static const int kPassStep[] = {8, 8, 4, 2};
+        x = 0;
+        if (interlace) {
+            y += kPassStep[pass];
+            while (y >= height && pass < 3) {
+                pass++;
+                y = kPassStart[pass];
+            }
         } else {
-            pixelsBuffer[loop] = colors[idx];
+            y++;
+        }
+        if (y >= height) {
+            done = true;
         }
+        startRow();
     }
 
-    while (idx_pixel < pixelsSize) {
-        pixelsBuffer[idx_pixel++] = 0;
-    }
-    if (interlace) {
-        // interlace flag
-        size_t i = 0;
-        int *pixels_copy = static_cast<int *>(malloc(sizeof(int) * pixelsSize));
-        size_t src_row = 0;
-        size_t pack = 1;
-        size_t step = 8;
-        size_t start = 8;
-        for (; pack <= 4 & src_row < height;) {
-            switch (pack) {
-                case 1:
-                    step = 8;
-                    start = 0;
-                    break;
-                case 2:
-                    step = 8;
-                    start = 4;
-                    break;
-                case 3:
-                    step = 4;
-                    start = 2;
+    void startRow() {
+        int canvasY = frameY + y;
+        row = nullptr;
+        if (!done && canvasY % sample == 0 && canvasY / sample < dstHeight) {
+            row = pixels + (canvasY / sample) * stride;
+        }
+        skip = firstSkip;
+        dstX = firstDstX;
+    }
+};
+
+/**
+ * Reads LZW codes out of the frame's LZW data, sub-block size bytes already removed on the Java side.
+ */
+struct CodeReader {
+    const uint8_t *data;
+    size_t length;
+    size_t position;
+    uint32_t datum;
+    int bits;
+
+    /**
+     * @return false once the data ends
+     */
+    inline bool read(int codeSize, int &code) {
+        while (bits < codeSize) {
+            if (position >= length) {
+                return false;
+            }
+            datum |= (uint32_t) data[position++] << bits;
+            bits += 8;
+        }
+        code = datum & ((1u << codeSize) - 1);
+        datum >>= codeSize;
+        bits -= codeSize;
+        return true;
+    }
+};
+
+/**
+ * Decode the LZW stream with fixed prefix / suffix tables, no allocation happens per frame.
+ * Pixels the stream does not cover are left transparent.
+ * @return false if the stream ended before the frame was complete
+ */
+template<typename Pixel>
+static bool decodeLZW(CodeReader &reader, int lzwMinCodeSize, FrameOutput<Pixel> &out) {
+    uint16_t prefix[LZW_MAX_CODES];
+    uint8_t suffix[LZW_MAX_CODES];
+    uint8_t stack[LZW_MAX_CODES + 1];
+
+    out.start();
+    if (lzwMinCodeSize < 1 || lzwMinCodeSize >= LZW_MAX_CODE_SIZE) {
+        lzwMinCodeSize = -1;
+    }
+    if (lzwMinCodeSize > 0) {
+        const int codeClear = 1 << lzwMinCodeSize;
+        const int codeEnd = codeClear + 1;
+        int codeSize = lzwMinCodeSize + 1;
+        int available = codeClear + 2;
+        int oldCode = -1;
+        uint8_t first = 0;
+        for (int i = 0; i < codeClear; i++) {
+            prefix[i] = 0;
+            suffix[i] = (uint8_t) i;
+        }
+        int code;
+        while (!out.done && reader.read(codeSize, code)) {
+            if (code == codeClear) {
+                codeSize = lzwMinCodeSize + 1;
+                available = codeClear + 2;
+                oldCode = -1;
+                continue;
+            }
+            if (code == codeEnd) {
+                break;
+            }
+            if (oldCode == -1) {
+                if (code >= codeClear) {
+                    // DECODE ERROR
                     break;
-                case 4:
-                    step = 2;
-                    start = 1;
+                }
+                first = (uint8_t) code;
+                oldCode = code;
+                out.put(first);
+                continue;
+            }
+            int inCode = code;
+            int top = 0;
+            if (code >= available) {
+                if (code > available) {
+                    // DECODE ERROR
                     break;
+                }
+                // KwKwK case, the string is the previous one plus its own first index
+                stack[top++] = first;
+                code = oldCode;
+            }
+            while (code >= codeClear) {
+                stack[top++] = suffix[code];
+                code = prefix[code];
+            }
+            first = suffix[code];
+            stack[top++] = first;
+            if (available < LZW_MAX_CODES) {
+                prefix[available] = (uint16_t) oldCode;
+                suffix[available] = first;
+                available++;
+                if ((available & ((1 << codeSize) - 1)) == 0 && available < LZW_MAX_CODES) {
+                    codeSize++;
+                }
+            }
+            oldCode = inCode;
+            while (top > 0 && !out.done) {
+                out.put(stack[--top]);
             }
-            i = start;
-            do {
-                // copy
-                memcpy(pixels_copy + i * width, pixelsBuffer + src_row * width,
-                       width * (sizeof(int)));
-                src_row++;
-                i += step;
-            } while (i < height);
-            pack++;
         }
-        memcpy(pixelsBuffer, pixels_copy, pixelsSize * sizeof(int));
-        free(pixels_copy);
     }
-    env->ReleaseIntArrayElements(pixels, pixelsBuffer, 0);
-    env->ReleaseIntArrayElements(colorTable, colors, JNI_ABORT);
+    bool complete = out.done;
+    if (out.blendOp == BLEND_OP_SOURCE) {
+        while (!out.done) {
+            out.putColor(0);
+        }
+    }
+    return complete;
+}
+
+/**
+ * Fill out's palette from the color table, indices without an entry decode as opaque black
+ * @return false if the array could not be accessed
+ */
+static bool loadPalette(JNIEnv *env, jintArray colorTable, jint transparentColorIndex,
+                        FrameOutput<uint32_t> &out) {
+    jsize colorCount = env->GetArrayLength(colorTable);
+    auto *colors = static_cast<uint32_t *>(env->GetPrimitiveArrayCritical(colorTable, nullptr));
+    if (colors == nullptr) {
+        return false;
+    }
+    for (int i = 0; i < 256; i++) {
+        out.palette[i] = i < colorCount ? colors[i] : 0xff000000u;
+    }
+    env->ReleasePrimitiveArrayCritical(colorTable, colors, JNI_ABORT);
+    if (transparentColorIndex >= 0 && transparentColorIndex < 256) {
+        // Index 0 in the palette can only be this one, opaque colors always carry alpha
+        out.palette[transparentColorIndex] = 0;
+    }
+    return true;
+}
+
+/**
+ * Place a width x height frame at (x, y) of the full size canvas, of which dst holds every
+ * sample-th pixel as a dstWidth x dstHeight canvas.
+ * x and y may be negative by less than sample, which shifts the sampled origin to the frame.
+ * @return false if no pixel of the frame lands on the destination
+ */
+template<typename Pixel>
+static bool placeFrame(FrameOutput<Pixel> &out, Pixel *dst, int dstWidth, int dstHeight, int dstStride,
+                       int x, int y, int width, int height, int sample) {
+    if (sample <= 0 || x <= -sample || y <= -sample || width <= 0 || height <= 0) {
+        return false;
+    }
+    out.pixels = dst;
+    out.dstWidth = dstWidth;
+    out.dstHeight = dstHeight;
+    out.stride = dstStride;
+    out.frameX = x;
+    out.frameY = y;
+    out.width = width;
+    out.height = height;
+    out.sample = sample;
+    // Nothing to write once the first kept pixel is outside the destination
+    return (x + sample - 1) / sample < dstWidth && (y + sample - 1) / sample < dstHeight;
+}
+
+/**
+ * Decode the frame data held by the data array into out, which must already point at its pixels.
+ * Only critical array access happens here, so it may run while pixels from a critical section are held.
+ *
+ * @param dataLength already clamped to the array length
+ * @return false if the frame could not be decoded completely
+ */
+template<typename Pixel>
+static bool decodeData(JNIEnv *env, jbyteArray data, jint dataLength, jint lzwMinCodeSize,
+                       FrameOutput<Pixel> &out) {
+    auto *dataBytes = static_cast<uint8_t *>(env->GetPrimitiveArrayCritical(data, nullptr));
+    if (dataBytes == nullptr) {
+        return false;
+    }
+    CodeReader reader = {dataBytes, (size_t) (dataLength > 0 ? dataLength : 0), 0, 0, 0};
+    bool complete = decodeLZW(reader, lzwMinCodeSize, out);
+    env->ReleasePrimitiveArrayCritical(data, dataBytes, JNI_ABORT);
+    return complete;
+}
+
+static void uncompressLZWToArray(
+        JNIEnv *env,
+        jobject /* this */,
+        jbyteArray data,
+        jint dataLength,
+        jintArray colorTable,
+        jint transparentColorIndex,
+        jint lzwMinCodeSize,
+        jboolean interlace,
+        jint width,
+        jint height,
+        jintArray dst,
+        jint dstWidth,
+        jint dstHeight,
+        jint x,
+        jint y,
+        jint sampleSize,
+        jint blendOp) {
+    if (dstWidth < 0 || dstHeight < 0 || (jlong) dstWidth * dstHeight > env->GetArrayLength(dst)) {
+        LOGE("Pixel array too small");
+        return;
+    }
+    if (dataLength > env->GetArrayLength(data)) {
+        dataLength = env->GetArrayLength(data);
+    }
+    FrameOutput<uint32_t> out;
+    out.interlace = interlace;
+    out.blendOp = blendOp;
+    if (!loadPalette(env, colorTable, transparentColorIndex, out)) {
+        return;
+    }
+    auto *pixels = static_cast<uint32_t *>(env->GetPrimitiveArrayCritical(dst, nullptr));
+    if (pixels == nullptr) {
+        return;
+    }
+    if (placeFrame(out, pixels, dstWidth, dstHeight, dstWidth, x, y, width, height, sampleSize)) {
+        decodeData(env, data, dataLength, lzwMinCodeSize, out);
+    }
+    env->ReleasePrimitiveArrayCritical(dst, pixels, 0);
 }
 
+static void uncompressLZWToBitmap(
+        JNIEnv *env,
+        jobject /* this */,
+        jbyteArray data,
+        jint dataLength,
+        jintArray colorTable,
+        jint transparentColorIndex,
+        jint lzwMinCodeSize,
+        jboolean interlace,
+        jint width,
+        jint height,
+        jobject dst,
+        jint x,
+        jint y,
+        jint sampleSize,
+        jint blendOp) {
+    if (dataLength > env->GetArrayLength(data)) {
+        dataLength = env->GetArrayLength(data);
+    }
+    FrameOutput<uint32_t> out;
+    out.interlace = interlace;
+    out.blendOp = blendOp;
+    if (!loadPalette(env, colorTable, transparentColorIndex, out)) {
+        return;
+    }
+    PixelCanvas canvas;
+    if (!lockBitmap(env, dst, canvas)) {
+        return;
+    }
+    if (placeFrame(out, canvas.pixels, canvas.width, canvas.height, canvas.stride, x, y, width, height,
+                   sampleSize)) {
+        decodeData(env, data, dataLength, lzwMinCodeSize, out);
+    }
+    AndroidBitmap_unlockPixels(env, dst);
+}
+
+/**
+ * Decode the palette indices of the frame into a dstWidth x dstHeight byte array,
+ * sampled like the other entry points. Transparency is left to whoever expands the indices.
+ * @return false if the stream ended before the frame was complete
+ */
+static jboolean uncompressLZWToIndices(
+        JNIEnv *env,
+        jobject /* this */,
+        jbyteArray data,
+        jint dataLength,
+        jint lzwMinCodeSize,
+        jboolean interlace,
+        jint width,
+        jint height,
+        jbyteArray dst,
+        jint dstWidth,
+        jint dstHeight,
+        jint x,
+        jint y,
+        jint sampleSize) {
+    if (dstWidth < 0 || dstHeight < 0 || (jlong) dstWidth * dstHeight > env->GetArrayLength(dst)) {
+        LOGE("Index array too small");
+        return JNI_FALSE;
+    }
+    if (dataLength > env->GetArrayLength(data)) {
+        dataLength = env->GetArrayLength(data);
+    }
+    FrameOutput<uint8_t> out;
+    out.interlace = interlace;
+    out.blendOp = BLEND_OP_SOURCE;
+    for (int i = 0; i < 256; i++) {
+        out.palette[i] = (uint8_t) i;
+    }
+    auto *indices = static_cast<uint8_t *>(env->GetPrimitiveArrayCritical(dst, nullptr));
+    if (indices == nullptr) {
+        return JNI_FALSE;
+    }
+    bool complete = false;
+    if (placeFrame(out, indices, dstWidth, dstHeight, dstWidth, x, y, width, height, sampleSize)) {
+        complete = decodeData(env, data, dataLength, lzwMinCodeSize, out);
+    }
+    env->ReleasePrimitiveArrayCritical(dst, indices, 0);
+    return complete ? JNI_TRUE : JNI_FALSE;
+}
+
+/**
+ * Clip the rect (left, top, right, bottom) to the canvas
+ * @return false if it is empty
+ */
+static bool clipBounds(int width, int height, int &left, int &top, int &right, int &bottom) {
+    left = left < 0 ? 0 : (left > width ? width : left);
+    top = top < 0 ? 0 : (top > height ? height : top);
+    right = right < left ? left : (right > width ? width : right);
+    bottom = bottom < top ? top : (bottom > height ? height : bottom);
+    return right > left && bottom > top;
+}
+
+static void copyRect(const uint32_t *src, int srcStride, uint32_t *dst, int dstStride, int w, int h) {
+    for (int row = 0; row < h; row++) {
+        memcpy(dst, src, w * sizeof(uint32_t));
+        src += srcStride;
+        dst += dstStride;
+    }
+}
+
+/**
+ * Render a frame onto the canvas in one pass over its pixel memory:
+ * apply the disposal the previous frame left, save this frame's rect when it restores to previous,
+ * decode the frame over the canvas and paint the background behind transparent pixels.
+ * The frame geometry is in full size coordinates, the canvas and disposal rect are sampled.
+ */
+static void renderLZW(
+        JNIEnv *env,
+        jobject /* this */,
+        jbyteArray data,
+        jint dataLength,
+        jintArray colorTable,
+        jint transparentColorIndex,
+        jint lzwMinCodeSize,
+        jboolean interlace,
+        jint width,
+        jint height,
+        jintArray canvas,
+        jint canvasWidth,
+        jint canvasHeight,
+        jint x,
+        jint y,
+        jint sampleSize,
+        jint disposeOp,
+        jint disposeLeft,
+        jint disposeTop,
+        jint disposeRight,
+        jint disposeBottom,
+        jint disposeColor,
+        jintArray saved,
+        jboolean save,
+        jint backgroundColor) {
+    if (canvasWidth < 0 || canvasHeight < 0
+        || (jlong) canvasWidth * canvasHeight > env->GetArrayLength(canvas)) {
+        LOGE("Canvas array too small");
+        return;
+    }
+    if (dataLength > env->GetArrayLength(data)) {
+        dataLength = env->GetArrayLength(data);
+    }
+    bool restore = disposeOp == DISPOSE_OP_PREVIOUS
+                   && clipBounds(canvasWidth, canvasHeight, disposeLeft, disposeTop, disposeRight, disposeBottom);
+    if (sampleSize <= 0) {
+        return;
+    }
+    // The sampled pixels a frame covers, see FrameOutput
+    int saveLeft = (x + sampleSize - 1) / sampleSize;
+    int saveTop = (y + sampleSize - 1) / sampleSize;
+    int saveRight = (x + width + sampleSize - 1) / sampleSize;
+    int saveBottom = (y + height + sampleSize - 1) / sampleSize;
+    save = save && clipBounds(canvasWidth, canvasHeight, saveLeft, saveTop, saveRight, saveBottom);
+    jsize savedLength = saved == nullptr ? 0 : env->GetArrayLength(saved);
+    if ((restore && (jlong) (disposeRight - disposeLeft) * (disposeBottom - disposeTop) > savedLength)
+        || (save && (jlong) (saveRight - saveLeft) * (saveBottom - saveTop) > savedLength)) {
+        LOGE("Saved array too small");
+        return;
+    }
+    FrameOutput<uint32_t> out;
+    out.interlace = interlace;
+    out.blendOp = BLEND_OP_OVER;
+    if (!loadPalette(env, colorTable, transparentColorIndex, out)) {
+        return;
+    }
+
+    // No other JNI calls may happen while the arrays are held
+    auto *pixels = static_cast<uint32_t *>(env->GetPrimitiveArrayCritical(canvas, nullptr));
+    if (pixels == nullptr) {
+        return;
+    }
+    uint32_t *savedPixels = nullptr;
+    if (restore || save) {
+        savedPixels = static_cast<uint32_t *>(env->GetPrimitiveArrayCritical(saved, nullptr));
+        if (savedPixels == nullptr) {
+            env->ReleasePrimitiveArrayCritical(canvas, pixels, JNI_ABORT);
+            return;
+        }
+    }
+    switch (disposeOp) {
+        case DISPOSE_OP_BACKGROUND:
+            if (clipBounds(canvasWidth, canvasHeight, disposeLeft, disposeTop, disposeRight, disposeBottom)) {
+                uint32_t *row = pixels + disposeTop * canvasWidth + disposeLeft;
+                for (int i = disposeTop; i < disposeBottom; i++) {
+                    fillRow(row, (uint32_t) disposeColor, disposeRight - disposeLeft);
+                    row += canvasWidth;
+                }
+            }
+            break;
+        case DISPOSE_OP_PREVIOUS:
+            if (restore) {
+                int w = disposeRight - disposeLeft;
+                copyRect(savedPixels, w, pixels + disposeTop * canvasWidth + disposeLeft, canvasWidth,
+                         w, disposeBottom - disposeTop);
+            }
+            break;
+        default:
+            break;
+    }
+    if (save) {
+        // Only the rect this frame covers is kept, not the whole canvas
+        int w = saveRight - saveLeft;
+        copyRect(pixels + saveTop * canvasWidth + saveLeft, canvasWidth, savedPixels, w,
+                 w, saveBottom - saveTop);
+    }
+    if (placeFrame(out, pixels, canvasWidth, canvasHeight, canvasWidth, x, y, width, height, sampleSize)) {
+        decodeData(env, data, dataLength, lzwMinCodeSize, out);
+    }
+    if ((uint32_t) backgroundColor >> 24 != 0) {
+        fillBehindRow(pixels, (uint32_t) backgroundColor, (size_t) canvasWidth * canvasHeight);
+    }
+    if (savedPixels != nullptr) {
+        env->ReleasePrimitiveArrayCritical(saved, savedPixels, save ? 0 : JNI_ABORT);
+    }
+    env->ReleasePrimitiveArrayCritical(canvas, pixels, 0);
+}
 
 static JNINativeMethod methods[] = {
-        {"uncompressLZW", "(Lcom/github/penfeizhou/animation/gif/io/GifReader;[II[IIIIZ[B)V", (void *) &uncompressLZW},
+        {"uncompressLZW", "([BI[IIIZII[IIIIIII)V",                     (void *) &uncompressLZWToArray},
+        {"uncompressLZW", "([BI[IIIZIILandroid/graphics/Bitmap;IIII)V", (void *) &uncompressLZWToBitmap},
+        {"renderLZW",     "([BI[IIIZII[IIIIIIIIIIII[IZI)V",           (void *) &renderLZW},
+        {"uncompressLZW", "([BIIZII[BIIIII)Z",                         (void *) &uncompressLZWToIndices},
 };
 
 int jniRegisterNativeMethods(JNIEnv *env, const char *className, const JNINativeMethod *gMethods,
@@ -221,10 +586,6 @@ jint JNI_OnLoad(JavaVM *vm, void *reserved) {
     if (vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) != JNI_OK) {
         return -1;
     }
-    if (JavaReader_OnLoad(env)) {
-        LOGE("Failed to load JavaReader");
-        return -1;
-    }
     if (registerNativeMethods(env) != JNI_OK) {
         return -1;
     }
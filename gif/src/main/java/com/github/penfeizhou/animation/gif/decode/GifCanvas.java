@@ -0,0 +1,102 @@
+package com.github.penfeizhou.animation.gif.decode;
+
+import android.graphics.Color;
+
+import com.github.penfeizhou.animation.decode.EncodedFrameCache;
+import com.github.penfeizhou.animation.decode.FrameCompositor;
+
+import java.io.IOException;
+
+/**
+ * @Description: Composites GIF frames on the pixels of a {@link FrameCompositor} canvas.
+ * Disposal, decoding and the background fill of a frame happen in a single native call, and
+ * restore-to-previous keeps a copy of the frame rect only.
+ */
+class GifCanvas {
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    /**
+     * Disposal the last rendered frame left for the next one
+     */
+    private int disposeOp = FrameCompositor.DISPOSE_OP_NONE;
+    private int disposeLeft;
+    private int disposeTop;
+    private int disposeRight;
+    private int disposeBottom;
+    private int[] saved = new int[0];
+    private final GifFrameBuffers buffers;
+
+    GifCanvas(FrameCompositor compositor, GifFrameBuffers buffers) {
+        this.pixels = compositor.getCanvas();
+        this.width = compositor.getWidth();
+        this.height = compositor.getHeight();
+        this.buffers = buffers;
+    }
+
+    boolean isBackedBy(FrameCompositor compositor) {
+        return compositor.getCanvas() == pixels;
+    }
+
+    /**
+     * @param first           the canvas is cleared to backgroundColor instead of disposing the previous frame
+     * @param backgroundColor painted behind transparent pixels, transparent for none
+     * @param cache           may be null, holds palette indices of decoded frames
+     * @param index           frame index used as cache key
+     */
+    void render(GifFrame frame, int sampleSize, boolean first, int backgroundColor,
+                EncodedFrameCache cache, int index) throws IOException {
+        int op = disposeOp;
+        int left = disposeLeft, top = disposeTop, right = disposeRight, bottom = disposeBottom;
+        int color = Color.TRANSPARENT;
+        if (first) {
+            op = FrameCompositor.DISPOSE_OP_BACKGROUND;
+            left = 0;
+            top = 0;
+            right = width;
+            bottom = height;
+            color = backgroundColor;
+        }
+        // Sampled pixels the frame covers, those at multiples of sampleSize in full size coordinates
+        int frameLeft = ceilDiv(frame.frameX, sampleSize);
+        int frameTop = ceilDiv(frame.frameY, sampleSize);
+        int frameRight = ceilDiv(frame.frameX + frame.frameWidth, sampleSize);
+        int frameBottom = ceilDiv(frame.frameY + frame.frameHeight, sampleSize);
+        boolean save = frame.disposalMethod == 3;
+        if (save) {
+            int w = Math.max(0, Math.min(frameRight, width) - Math.min(frameLeft, width));
+            int h = Math.max(0, Math.min(frameBottom, height) - Math.min(frameTop, height));
+            if (saved.length < w * h) {
+                saved = new int[w * h];
+            }
+        }
+        frame.render(pixels, width, height, sampleSize,
+                op, left, top, right, bottom, color, saved, save, backgroundColor, cache, index, buffers);
+        switch (frame.disposalMethod) {
+            case 2:
+                disposeOp = FrameCompositor.DISPOSE_OP_BACKGROUND;
+                break;
+            case 3:
+                disposeOp = FrameCompositor.DISPOSE_OP_PREVIOUS;
+                break;
+            default:
+                disposeOp = FrameCompositor.DISPOSE_OP_NONE;
+                break;
+        }
+        disposeLeft = frameLeft;
+        disposeTop = frameTop;
+        disposeRight = frameRight;
+        disposeBottom = frameBottom;
+    }
+
+    /**
+     * @return bytes of the saved rect and the decoding buffers, the canvas pixels belong to the compositor
+     */
+    int getMemorySize() {
+        return saved.length * 4 + buffers.getMemorySize();
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -1,14 +1,10 @@
 package com.github.penfeizhou.animation.gif.decode;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.PorterDuff;
 import android.graphics.Rect;
-import android.util.Log;
 
 import com.github.penfeizhou.animation.decode.Frame;
+import com.github.penfeizhou.animation.decode.FrameCompositor;
 import com.github.penfeizhou.animation.decode.FrameSeqDecoder;
 import com.github.penfeizhou.animation.gif.io.GifReader;
 import com.github.penfeizhou.animation.gif.io.GifWriter;
@@ -16,7 +12,6 @@ import com.github.penfeizhou.animation.io.Reader;
 import com.github.penfeizhou.animation.loader.Loader;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -28,16 +23,12 @@ public class GifDecoder extends FrameSeqDecoder<GifReader, GifWriter> {
     private static final String TAG = "GifDecoder";
 
     private GifWriter mGifWriter = new GifWriter();
-    private final Paint paint = new Paint();
+    private volatile GifCanvas gifCanvas;
     private int bgColor = Color.TRANSPARENT;
-    private final SnapShot snapShot = new SnapShot();
     // If the `NETSCAPE` block is absent, the default loop count is 1,
     // meaning the GIF will play only once
     private int mLoopCount = 1;
-
-    private static class SnapShot {
-        ByteBuffer byteBuffer;
-    }
+    private volatile boolean frameIndexCacheEnabled = false;
 
     /**
      * @param loader         webp的reader
@@ -45,7 +36,6 @@ public class GifDecoder extends FrameSeqDecoder<GifReader, GifWriter> {
      */
     public GifDecoder(Loader loader, RenderListener renderListener) {
         super(loader, renderListener);
-        paint.setAntiAlias(true);
     }
 
     @Override
@@ -68,13 +58,68 @@ public class GifDecoder extends FrameSeqDecoder<GifReader, GifWriter> {
 
     @Override
     protected void release() {
-        snapShot.byteBuffer = null;
         mGifWriter = null;
+        gifCanvas = null;
+    }
+
+    /**
+     * Keep the decoded palette indices of frames, one byte per pixel, in the encoded frame cache
+     * so later loops skip LZW decoding. Off by default, frames that do not fit the cache budget
+     * are still decoded straight onto the canvas.
+     * Takes effect the next time the animation is started.
+     */
+    public void setFrameIndexCacheEnabled(boolean enabled) {
+        this.frameIndexCacheEnabled = enabled;
+    }
+
+    @Override
+    protected boolean isEncodedFrameCacheEnabled() {
+        return frameIndexCacheEnabled && super.isEncodedFrameCacheEnabled();
+    }
+
+    /**
+     * The cache holds decoded indices, one byte per sampled pixel of each frame, which the LZW
+     * data in the source is usually much smaller than
+     */
+    @Override
+    protected long getEncodedFrameCacheDemand() {
+        if (frames.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        long size = 0;
+        for (Frame<GifReader, GifWriter> frame : frames) {
+            size += (long) (frame.frameWidth / sampleSize + 1) * (frame.frameHeight / sampleSize + 1);
+        }
+        return size;
+    }
+
+    @Override
+    protected Rect readBounds(GifReader reader) throws IOException {
+        // 画布大小在Logical Screen Descriptor中，紧跟文件头
+        GifParser.checkHeader(reader);
+        LogicalScreenDescriptor logicalScreenDescriptor = new LogicalScreenDescriptor();
+        logicalScreenDescriptor.receive(reader);
+        return new Rect(0, 0, logicalScreenDescriptor.screenWidth, logicalScreenDescriptor.screenHeight);
+    }
+
+    @Override
+    public int getMemorySize() {
+        GifCanvas canvas = gifCanvas;
+        return super.getMemorySize() + (canvas == null ? 0 : canvas.getMemorySize());
     }
 
     @Override
     protected Rect read(GifReader reader) throws IOException {
-        List<Block> blocks = GifParser.parse(reader);
+        return read(reader, Integer.MAX_VALUE);
+    }
+
+    @Override
+    protected Rect readFirstFrame(GifReader reader) throws IOException {
+        return read(reader, 1);
+    }
+
+    private Rect read(GifReader reader, int frameLimit) throws IOException {
+        List<Block> blocks = GifParser.parse(reader, frameLimit);
         int canvasWidth = 0, canvasHeight = 0;
         ColorTable globalColorTable = null;
         GraphicControlExtension graphicControlExtension = null;
@@ -107,91 +152,32 @@ public class GifDecoder extends FrameSeqDecoder<GifReader, GifWriter> {
                 }
             }
         }
-            
-        long bufferSize = ((long) canvasWidth * canvasHeight /  ((long) sampleSize * sampleSize) + 1) * 4;
-
-        try {
-            frameBuffer = ByteBuffer.allocate((int)bufferSize);
-            snapShot.byteBuffer = ByteBuffer.allocate((int)bufferSize);
-        } catch (OutOfMemoryError e) {
-            Log.e(TAG, String.format(
-                    "OutOfMemoryError in GifDecoder: Buffer needed: %.2fMB (%,d bytes)",
-                    bufferSize / MB, bufferSize
-                )
-            );
-            frameBuffer = null;
-            snapShot.byteBuffer = null;
-            throw e;
-        }
 
         if (globalColorTable != null && bgColorIndex >= 0 && bgColorIndex < globalColorTable.getColorTable().length) {
-            int abgr = globalColorTable.getColorTable()[bgColorIndex];
-            this.bgColor = Color.rgb(abgr & 0xff, (abgr >> 8) & 0xff, (abgr >> 16) & 0xff);
+            // Color table entries are already in canvas pixel layout
+            this.bgColor = globalColorTable.getColorTable()[bgColorIndex];
         }
         return new Rect(0, 0, canvasWidth, canvasHeight);
     }
 
-    @Override
-    protected int getDesiredSample(int desiredWidth, int desiredHeight) {
-        return 1;
-    }
-
     @Override
     protected void renderFrame(Frame<GifReader, GifWriter> frame) {
         GifFrame gifFrame = (GifFrame) frame;
-        Bitmap bitmap = obtainBitmap(fullRect.width() / sampleSize, fullRect.height() / sampleSize);
-        Canvas canvas = cachedCanvas.get(bitmap);
-        if (canvas == null) {
-            canvas = new Canvas(bitmap);
-            cachedCanvas.put(bitmap, canvas);
+        FrameCompositor compositor = obtainCompositor();
+        if (gifCanvas == null || !gifCanvas.isBackedBy(compositor)) {
+            // 解码缓冲归画布所有，release()时随画布一起释放
+            gifCanvas = new GifCanvas(compositor, new GifFrameBuffers());
         }
-        frameBuffer.rewind();
-        bitmap.copyPixelsFromBuffer(frameBuffer);
         int backgroundColor = Color.TRANSPARENT;
         if (!gifFrame.transparencyFlag()) {
             backgroundColor = this.bgColor;
         }
-        if (frameIndex == 0) {
-            bitmap.eraseColor(backgroundColor);
-        } else {
-            GifFrame preFrame = (GifFrame) frames.get(frameIndex - 1);
-            canvas.save();
-            canvas.clipRect(preFrame.frameX / sampleSize,
-                    preFrame.frameY / sampleSize,
-                    (preFrame.frameX + preFrame.frameWidth) / sampleSize,
-                    (preFrame.frameY + preFrame.frameHeight) / sampleSize);
-            switch (preFrame.disposalMethod) {
-                case 0:
-                    break;
-                case 1:
-                    break;
-                case 2:
-                    canvas.drawColor(bgColor, PorterDuff.Mode.CLEAR);
-                    break;
-                case 3:
-                    snapShot.byteBuffer.rewind();
-                    canvas.drawColor(bgColor, PorterDuff.Mode.CLEAR);
-                    Bitmap preBitmap = obtainBitmap(fullRect.width() / sampleSize, fullRect.height() / sampleSize);
-                    preBitmap.copyPixelsFromBuffer(snapShot.byteBuffer);
-                    canvas.drawBitmap(preBitmap, 0, 0, paint);
-                    recycleBitmap(preBitmap);
-                    break;
-            }
-            canvas.restore();
-            if (gifFrame.disposalMethod == 3) {
-                if (preFrame.disposalMethod != 3) {
-                    frameBuffer.rewind();
-                    snapShot.byteBuffer.rewind();
-                    snapShot.byteBuffer.put(frameBuffer);
-                }
-            }
+        try {
+            gifCanvas.render(gifFrame, sampleSize, frameIndex == 0, backgroundColor,
+                    getEncodedFrameCache(), frameIndex);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        Bitmap reused = obtainBitmap(frame.frameWidth / sampleSize, frame.frameHeight / sampleSize);
-        gifFrame.draw(canvas, paint, sampleSize, reused, getWriter());
-        canvas.drawColor(backgroundColor, PorterDuff.Mode.DST_OVER);
-        recycleBitmap(reused);
-        frameBuffer.rewind();
-        bitmap.copyPixelsToBuffer(frameBuffer);
-        recycleBitmap(bitmap);
+        compositor.copyTo(frameBuffer);
     }
 }
@@ -3,12 +3,18 @@ package com.github.penfeizhou.animation.gif.decode;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.util.Log;
 
+import com.github.penfeizhou.animation.decode.EncodedFrameCache;
 import com.github.penfeizhou.animation.decode.Frame;
+import com.github.penfeizhou.animation.decode.FrameCompositor;
 import com.github.penfeizhou.animation.gif.io.GifReader;
 import com.github.penfeizhou.animation.gif.io.GifWriter;
 
 import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import androidx.annotation.Nullable;
 
@@ -19,16 +25,22 @@ import androidx.annotation.Nullable;
  * @CreateDate: 2019-05-16
  */
 public class GifFrame extends Frame<GifReader, GifWriter> {
-    static {
-        System.loadLibrary("animation-decoder-gif");
-    }
+    private static final String TAG = "GifFrame";
+    private static final boolean sNativeLoaded = loadNativeLibrary();
+    private static volatile boolean sNativeEnabled = sNativeLoaded;
+    /**
+     * Scratch buffers of {@link #draw}, owned by the writer its caller passes in every time and
+     * dropped together with it
+     */
+    private static final Map<GifWriter, GifFrameBuffers> sWriterBuffers = new WeakHashMap<>();
 
     public final int disposalMethod;
     public final int transparentColorIndex;
     public final ColorTable colorTable;
     private final int imageDataOffset;
+    private final int imageDataLength;
+    private final int[] subBlocks;
     private final int lzwMinCodeSize;
-    private static final ThreadLocal<byte[]> sDataBlock = new ThreadLocal<>();
     private static final int DEFAULT_DELAY = 10;
     private final boolean interlace;
 
@@ -63,19 +75,75 @@ public class GifFrame extends Frame<GifReader, GifWriter> {
         }
         this.lzwMinCodeSize = imageDescriptor.lzwMinimumCodeSize;
         imageDataOffset = imageDescriptor.imageDataOffset;
+        imageDataLength = imageDescriptor.imageDataLength;
+        subBlocks = imageDescriptor.subBlocks;
+    }
+
+    private static boolean loadNativeLibrary() {
+        try {
+            System.loadLibrary("animation-decoder-gif");
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            Log.e(TAG, "Native GIF decoder unavailable, falling back to Java", e);
+            return false;
+        }
+    }
+
+    /**
+     * Choose between the native and the pure Java LZW decoder, both produce the same pixels.
+     * The Java one is always used when the native library failed to load.
+     */
+    public static void setNativeDecoderEnabled(boolean enabled) {
+        sNativeEnabled = enabled && sNativeLoaded;
+    }
+
+    public static boolean isNativeDecoderEnabled() {
+        return sNativeEnabled;
     }
 
     public boolean transparencyFlag() {
         return transparentColorIndex >= 0;
     }
 
+    private static GifFrameBuffers buffersOf(GifWriter writer) {
+        if (writer == null) {
+            return new GifFrameBuffers();
+        }
+        synchronized (sWriterBuffers) {
+            GifFrameBuffers buffers = sWriterBuffers.get(writer);
+            if (buffers == null) {
+                buffers = new GifFrameBuffers();
+                sWriterBuffers.put(writer, buffers);
+            }
+            return buffers;
+        }
+    }
+
     @Override
     public Bitmap draw(Canvas canvas, Paint paint, int sampleSize, Bitmap reusedBitmap, GifWriter writer) {
         try {
-            writer.reset(frameWidth * frameHeight / (sampleSize * sampleSize));
-            int[] pixels = writer.asIntArray();
-            encode(pixels, sampleSize);
-            reusedBitmap.copyPixelsFromBuffer(writer.asBuffer().rewind());
+            // 不经过GifDecoder的渲染路径，缓冲归调用方的writer所有，逐帧绘制时复用
+            GifFrameBuffers buffers = buffersOf(writer);
+            byte[] data = buffers.obtainImageData(imageDataLength);
+            int length = readImageData(data);
+            // 直接解码到reusedBitmap的像素内存，不经过中间缓冲
+            if (sNativeEnabled) {
+                uncompressLZW(data,
+                        length,
+                        colorTable.getColorTable(),
+                        transparentColorIndex,
+                        lzwMinCodeSize,
+                        interlace,
+                        frameWidth,
+                        frameHeight,
+                        reusedBitmap,
+                        0,
+                        0,
+                        sampleSize,
+                        FrameCompositor.BLEND_OP_SOURCE);
+            } else {
+                drawJava(buffers, data, length, sampleSize, reusedBitmap);
+            }
             srcRect.left = 0;
             srcRect.top = 0;
             srcRect.right = reusedBitmap.getWidth();
@@ -92,32 +160,346 @@ public class GifFrame extends Frame<GifReader, GifWriter> {
         return reusedBitmap;
     }
 
+    /**
+     * Decode into a (frameWidth / sampleSize) x (frameHeight / sampleSize) pixel array,
+     * transparent pixels become 0
+     *
+     * @deprecated allocates scratch buffers on every call, use
+     * {@link #encode(int[], int, GifFrameBuffers)} with buffers kept for all frames
+     */
+    @Deprecated
     public void encode(int[] pixels, int sampleSize) throws IOException {
-        reader.reset();
-        reader.skip(imageDataOffset);
-        byte[] dataBlock = sDataBlock.get();
-        if (dataBlock == null) {
-            dataBlock = new byte[0xff];
-            sDataBlock.set(dataBlock);
+        encode(pixels, sampleSize, new GifFrameBuffers());
+    }
+
+    /**
+     * Decode into a (frameWidth / sampleSize) x (frameHeight / sampleSize) pixel array,
+     * transparent pixels become 0
+     *
+     * @param buffers scratch buffers of the caller, reused for every frame it decodes
+     */
+    public void encode(int[] pixels, int sampleSize, GifFrameBuffers buffers) throws IOException {
+        byte[] data = buffers.obtainImageData(imageDataLength);
+        int length = readImageData(data);
+        if (!sNativeEnabled) {
+            buffers.javaDecoder().decode(data,
+                    length,
+                    colorTable.getColorTable(),
+                    transparentColorIndex,
+                    lzwMinCodeSize,
+                    interlace,
+                    frameWidth,
+                    frameHeight,
+                    pixels,
+                    frameWidth / sampleSize,
+                    frameHeight / sampleSize,
+                    0,
+                    0,
+                    sampleSize,
+                    FrameCompositor.BLEND_OP_SOURCE);
+            return;
         }
-        uncompressLZW(reader,
+        uncompressLZW(data,
+                length,
                 colorTable.getColorTable(),
                 transparentColorIndex,
+                lzwMinCodeSize,
+                interlace,
+                frameWidth,
+                frameHeight,
                 pixels,
                 frameWidth / sampleSize,
                 frameHeight / sampleSize,
+                0,
+                0,
+                sampleSize,
+                FrameCompositor.BLEND_OP_SOURCE);
+    }
+
+    /**
+     * Render this frame onto a canvas in one native pass, see {@link GifCanvas#render}
+     *
+     * @param canvas    every sampleSize-th pixel of the full size canvas
+     * @param disposeOp disposal left by the previous frame, a FrameCompositor DISPOSE_OP,
+     *                  its rect is in sampled canvas coordinates
+     * @param saved     rect saved by the previous frame when disposeOp restores to previous;
+     *                  receives this frame's rect when save is set
+     * @param cache     may be null, keeps the frame's palette indices so later loops skip LZW decoding
+     * @param index     frame index used as cache key
+     * @param buffers   scratch buffers of the decoder
+     */
+    void render(int[] canvas, int canvasWidth, int canvasHeight, int sampleSize,
+                int disposeOp, int disposeLeft, int disposeTop, int disposeRight, int disposeBottom,
+                int disposeColor, int[] saved, boolean save, int backgroundColor,
+                EncodedFrameCache cache, int index, GifFrameBuffers buffers) throws IOException {
+        byte[] indices = cache == null ? null : obtainIndices(cache, index, sampleSize, buffers);
+        if (indices != null) {
+            // 只在合成时按调色板展开为ARGB
+            buffers.javaDecoder().render(indices,
+                    sampledRight(sampleSize) - sampledLeft(sampleSize),
+                    sampledBottom(sampleSize) - sampledTop(sampleSize),
+                    colorTable.getColorTable(),
+                    transparentColorIndex,
+                    frameWidth,
+                    frameHeight,
+                    canvas,
+                    canvasWidth,
+                    canvasHeight,
+                    frameX,
+                    frameY,
+                    sampleSize,
+                    disposeOp,
+                    disposeLeft,
+                    disposeTop,
+                    disposeRight,
+                    disposeBottom,
+                    disposeColor,
+                    saved,
+                    save,
+                    backgroundColor);
+            return;
+        }
+        byte[] data = buffers.obtainImageData(imageDataLength);
+        int length = readImageData(data);
+        if (!sNativeEnabled) {
+            buffers.javaDecoder().render(data,
+                    length,
+                    colorTable.getColorTable(),
+                    transparentColorIndex,
+                    lzwMinCodeSize,
+                    interlace,
+                    frameWidth,
+                    frameHeight,
+                    canvas,
+                    canvasWidth,
+                    canvasHeight,
+                    frameX,
+                    frameY,
+                    sampleSize,
+                    disposeOp,
+                    disposeLeft,
+                    disposeTop,
+                    disposeRight,
+                    disposeBottom,
+                    disposeColor,
+                    saved,
+                    save,
+                    backgroundColor);
+            return;
+        }
+        renderLZW(data,
+                length,
+                colorTable.getColorTable(),
+                transparentColorIndex,
                 lzwMinCodeSize,
                 interlace,
-                dataBlock);
+                frameWidth,
+                frameHeight,
+                canvas,
+                canvasWidth,
+                canvasHeight,
+                frameX,
+                frameY,
+                sampleSize,
+                disposeOp,
+                disposeLeft,
+                disposeTop,
+                disposeRight,
+                disposeBottom,
+                disposeColor,
+                saved,
+                save,
+                backgroundColor);
     }
 
-    private native void uncompressLZW(GifReader gifReader,
+    /**
+     * Palette indices of the sampled pixels the frame covers, one byte per pixel
+     *
+     * @return the cached indices, decoded on a miss, or null if they do not fit the cache or the
+     * frame data is incomplete
+     */
+    private byte[] obtainIndices(EncodedFrameCache cache, int index, int sampleSize,
+                                 GifFrameBuffers buffers) throws IOException {
+        int left = sampledLeft(sampleSize);
+        int top = sampledTop(sampleSize);
+        int width = sampledRight(sampleSize) - left;
+        int height = sampledBottom(sampleSize) - top;
+        byte[] indices = cache.get(index);
+        if (indices != null && indices.length == width * height) {
+            return indices;
+        }
+        if (!cache.canPut(index, width * height)) {
+            // 放不进缓存时直接解码到画布，省去中间的索引缓冲
+            return null;
+        }
+        indices = buffers.obtainIndices(width * height);
+        byte[] data = buffers.obtainImageData(imageDataLength);
+        int length = readImageData(data);
+        // 以帧左上角第一个采样点为原点，保持与画布相同的采样网格
+        int x = frameX - left * sampleSize;
+        int y = frameY - top * sampleSize;
+        boolean complete;
+        if (sNativeEnabled) {
+            complete = uncompressLZW(data, length, lzwMinCodeSize, interlace,
+                    frameWidth, frameHeight, indices, width, height, x, y, sampleSize);
+        } else {
+            complete = buffers.javaDecoder().decode(data, length, lzwMinCodeSize, interlace,
+                    frameWidth, frameHeight, indices, width, height, x, y, sampleSize);
+        }
+        if (!complete) {
+            return null;
+        }
+        return cache.put(index, indices, width * height);
+    }
+
+    // Bounds of the sampled pixels the frame covers, in sampled canvas coordinates
+    private int sampledLeft(int sampleSize) {
+        return (frameX + sampleSize - 1) / sampleSize;
+    }
+
+    private int sampledTop(int sampleSize) {
+        return (frameY + sampleSize - 1) / sampleSize;
+    }
+
+    private int sampledRight(int sampleSize) {
+        return (frameX + frameWidth + sampleSize - 1) / sampleSize;
+    }
+
+    private int sampledBottom(int sampleSize) {
+        return (frameY + frameHeight + sampleSize - 1) / sampleSize;
+    }
+
+    /**
+     * Java fallback of the bitmap path, decodes into a pixel array and copies it into the bitmap
+     * keeping the raw pixel layout
+     */
+    private void drawJava(GifFrameBuffers buffers, byte[] data, int length, int sampleSize, Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = buffers.obtainPixels(width * height);
+        buffers.javaDecoder().decode(data,
+                length,
+                colorTable.getColorTable(),
+                transparentColorIndex,
+                lzwMinCodeSize,
+                interlace,
+                frameWidth,
+                frameHeight,
+                pixels,
+                width,
+                height,
+                0,
+                0,
+                sampleSize,
+                FrameCompositor.BLEND_OP_SOURCE);
+        bitmap.copyPixelsFromBuffer(IntBuffer.wrap(pixels, 0, width * height));
+    }
+
+    /**
+     * 一次读出全部数据子块，按解析时记录的子块表原地去掉长度字节，
+     * 解码器拿到的是连续的LZW数据，LZW解码过程中不再回调reader
+     *
+     * @param data at least imageDataLength bytes
+     * @return valid bytes in data
+     */
+    private int readImageData(byte[] data) throws IOException {
+        int read = Math.max(0, reader.read(imageDataOffset, data, 0, imageDataLength));
+        int length = 0;
+        for (int i = 0; i < subBlocks.length; i++) {
+            int start = subBlocks[i] + 1;
+            int end = i + 1 < subBlocks.length ? subBlocks[i + 1] : imageDataLength - 1;
+            int size = Math.min(end, read) - start;
+            if (size <= 0) {
+                break;
+            }
+            System.arraycopy(data, start, data, length, size);
+            length += size;
+        }
+        return length;
+    }
+
+    /**
+     * Decode the frame and write it at (x, y) of a dstWidth x dstHeight pixel array.
+     * Geometry is in full size pixels, dst holds every sampleSize-th pixel of them.
+     *
+     * @param data    LZW data of the frame, sub-block size bytes removed
+     * @param length  valid bytes in data
+     * @param blendOp {@link FrameCompositor#BLEND_OP_SOURCE} also writes transparent pixels,
+     *                {@link FrameCompositor#BLEND_OP_OVER} skips them
+     */
+    private native void uncompressLZW(byte[] data,
+                                      int length,
                                       int[] colorTable,
                                       int transparentColorIndex,
-                                      int[] pixels,
+                                      int lzwMinCodeSize,
+                                      boolean interlace,
                                       int width,
                                       int height,
+                                      int[] dst,
+                                      int dstWidth,
+                                      int dstHeight,
+                                      int x,
+                                      int y,
+                                      int sampleSize,
+                                      int blendOp);
+
+    /**
+     * Same as above, but writes into the locked pixels of an ARGB_8888 bitmap
+     */
+    private native void uncompressLZW(byte[] data,
+                                      int length,
+                                      int[] colorTable,
+                                      int transparentColorIndex,
                                       int lzwMinCodeSize,
                                       boolean interlace,
-                                      byte[] buffer);
+                                      int width,
+                                      int height,
+                                      Bitmap dst,
+                                      int x,
+                                      int y,
+                                      int sampleSize,
+                                      int blendOp);
+
+    /**
+     * Decode the palette indices of the frame into a dstWidth x dstHeight byte array, without
+     * resolving transparency. x and y may be negative by less than sampleSize.
+     *
+     * @return false if the data ended before the frame was complete
+     */
+    private native boolean uncompressLZW(byte[] data,
+                                         int length,
+                                         int lzwMinCodeSize,
+                                         boolean interlace,
+                                         int width,
+                                         int height,
+                                         byte[] dst,
+                                         int dstWidth,
+                                         int dstHeight,
+                                         int x,
+                                         int y,
+                                         int sampleSize);
+
+    private native void renderLZW(byte[] data,
+                                  int length,
+                                  int[] colorTable,
+                                  int transparentColorIndex,
+                                  int lzwMinCodeSize,
+                                  boolean interlace,
+                                  int width,
+                                  int height,
+                                  int[] canvas,
+                                  int canvasWidth,
+                                  int canvasHeight,
+                                  int x,
+                                  int y,
+                                  int sampleSize,
+                                  int disposeOp,
+                                  int disposeLeft,
+                                  int disposeTop,
+                                  int disposeRight,
+                                  int disposeBottom,
+                                  int disposeColor,
+                                  int[] saved,
+                                  boolean save,
+                                  int backgroundColor);
 }
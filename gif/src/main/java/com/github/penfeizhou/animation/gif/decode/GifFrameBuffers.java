@@ -0,0 +1,60 @@
+package com.github.penfeizhou.animation.gif.decode;
+
+/**
+ * @Description: Scratch buffers of GIF frame decoding, grown to the largest frame and reused.
+ * Owned by one decoder and dropped in its release(), so they are freed and counted with it.
+ * Callers decoding frames with {@link GifFrame#encode(int[], int, GifFrameBuffers)} keep one for
+ * all frames the same way.
+ * Not thread safe, a decoder renders on its worker thread only.
+ */
+public class GifFrameBuffers {
+    /**
+     * LZW data of a frame, sub-block size bytes removed
+     */
+    private byte[] imageData = new byte[0];
+    /**
+     * Palette indices of a frame before it goes into the index cache
+     */
+    private byte[] indices = new byte[0];
+    /**
+     * Pixels the Java decoder writes before they are copied into a bitmap
+     */
+    private int[] pixels = new int[0];
+    private LZWDecoder javaDecoder;
+
+    byte[] obtainImageData(int size) {
+        if (imageData.length < size) {
+            imageData = new byte[size];
+        }
+        return imageData;
+    }
+
+    byte[] obtainIndices(int size) {
+        if (indices.length < size) {
+            indices = new byte[size];
+        }
+        return indices;
+    }
+
+    int[] obtainPixels(int size) {
+        if (pixels.length < size) {
+            pixels = new int[size];
+        }
+        return pixels;
+    }
+
+    LZWDecoder javaDecoder() {
+        if (javaDecoder == null) {
+            javaDecoder = new LZWDecoder();
+        }
+        return javaDecoder;
+    }
+
+    int getMemorySize() {
+        int size = imageData.length + indices.length + pixels.length * 4;
+        if (javaDecoder != null) {
+            size += LZWDecoder.TABLE_BYTES;
+        }
+        return size;
+    }
+}
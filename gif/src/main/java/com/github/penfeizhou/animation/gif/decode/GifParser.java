@@ -92,6 +92,13 @@ public class GifParser {
     }
 
     public static List<Block> parse(GifReader reader) throws IOException {
+        return parse(reader, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param frameLimit stop after this many image descriptors
+     */
+    public static List<Block> parse(GifReader reader, int frameLimit) throws IOException {
         checkHeader(reader);
         List<Block> blocks = new ArrayList<>();
         // Logical Screen Descriptor
@@ -104,8 +111,9 @@ public class GifParser {
             blocks.add(globalColorTable);
         }
         byte flag;
+        int frameCount = 0;
         try {
-            while ((flag = reader.peek()) != 0x3B) {
+            while (frameCount < frameLimit && (flag = reader.peek()) != 0x3B) {
                 Block block = null;
                 switch (flag) {
                     case 0x21:
@@ -118,6 +126,9 @@ public class GifParser {
                 if (block != null) {
                     block.receive(reader);
                     blocks.add(block);
+                    if (block instanceof ImageDescriptor) {
+                        frameCount++;
+                    }
                 } else {
                     throw new FormatException();
                 }
@@ -132,7 +143,7 @@ public class GifParser {
     }
 
 
-    private static void checkHeader(GifReader reader) throws IOException {
+    static void checkHeader(GifReader reader) throws IOException {
         byte a;
         if (reader.peek() != 'G'
                 || reader.peek() != 'I'
@@ -3,6 +3,7 @@ package com.github.penfeizhou.animation.gif.decode;
 import com.github.penfeizhou.animation.gif.io.GifReader;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Image Descriptor.
@@ -126,6 +127,14 @@ public class ImageDescriptor implements Block {
     public ColorTable localColorTable;
     public int lzwMinimumCodeSize;
     public int imageDataOffset;
+    /**
+     * Bytes of data sub-blocks starting at imageDataOffset, block size bytes and terminator included
+     */
+    public int imageDataLength;
+    /**
+     * Offset of each data sub-block's size byte relative to imageDataOffset, terminator excluded
+     */
+    public int[] subBlocks;
 
     @Override
     public void receive(GifReader reader) throws IOException {
@@ -140,10 +149,22 @@ public class ImageDescriptor implements Block {
         }
         this.lzwMinimumCodeSize = reader.peek() & 0xff;
         imageDataOffset = reader.position();
+        int[] blocks = new int[16];
+        int count = 0;
         byte blockSize;
-        while ((blockSize = reader.peek()) != 0x0) {
+        while (true) {
+            int offset = reader.position() - imageDataOffset;
+            if ((blockSize = reader.peek()) == 0x0) {
+                break;
+            }
+            if (count == blocks.length) {
+                blocks = Arrays.copyOf(blocks, count * 2);
+            }
+            blocks[count++] = offset;
             reader.skip(blockSize & 0xff);
         }
+        imageDataLength = reader.position() - imageDataOffset;
+        subBlocks = Arrays.copyOf(blocks, count);
     }
 
     public boolean localColorTableFlag() {
@@ -0,0 +1,434 @@
+package com.github.penfeizhou.animation.gif.decode;
+
+import com.github.penfeizhou.animation.decode.FrameCompositor;
+
+import java.util.Arrays;
+
+/**
+ * @Description: Pure Java counterpart of the native GIF LZW decoder, used when the native library
+ * is unavailable or disabled. Takes the same arguments and writes the same pixels as the native
+ * uncompressLZW / renderLZW of {@link GifFrame}. Also expands cached palette indices of a frame
+ * onto the canvas. Tables are allocated once per instance, so an instance must stay on one thread.
+ */
+class LZWDecoder {
+    // LZW codes are at most 12 bits
+    private static final int MAX_CODES = 4096;
+    private static final int MAX_CODE_SIZE = 12;
+    private static final int[] PASS_START = {0, 4, 2, 1};
+    private static final int[] PASS_STEP = {8, 8, 4, 2};
+    /**
+     * Bytes held by the tables of one instance
+     */
+    static final int TABLE_BYTES = MAX_CODES * 2 + MAX_CODES + MAX_CODES + 1 + 256 * 4;
+
+    private final short[] prefix = new short[MAX_CODES];
+    private final byte[] suffix = new byte[MAX_CODES];
+    private final byte[] stack = new byte[MAX_CODES + 1];
+    /**
+     * Palette with the transparent index already mapped to 0
+     */
+    private final int[] palette = new int[256];
+
+    // LZW data with the sub-block size bytes removed
+    private byte[] data;
+    private int length;
+    private int position;
+    private int datum;
+    private int bits;
+
+    // Sampled destination, see the native FrameOutput. Indices are written instead of colors when set
+    private int[] pixels;
+    private byte[] indices;
+    private int dstWidth;
+    private int dstHeight;
+    private int frameX;
+    private int frameY;
+    private int width;
+    private int height;
+    private int sample;
+    private boolean interlace;
+    private int blendOp;
+
+    private int x;
+    private int y;
+    private int pass;
+    private boolean done;
+    // -1 while the current row is skipped or clipped
+    private int rowOffset;
+    private int dstX;
+    private int skip;
+    private int firstSkip;
+    private int firstDstX;
+
+    /**
+     * Decode the frame and write it at (x, y) of a dstWidth x dstHeight pixel array,
+     * see GifFrame's native uncompressLZW
+     */
+    void decode(byte[] data, int length, int[] colorTable, int transparentColorIndex,
+                int lzwMinCodeSize, boolean interlace, int width, int height,
+                int[] dst, int dstWidth, int dstHeight, int x, int y, int sampleSize, int blendOp) {
+        if (dstWidth < 0 || dstHeight < 0 || (long) dstWidth * dstHeight > dst.length) {
+            return;
+        }
+        loadPalette(colorTable, transparentColorIndex);
+        this.interlace = interlace;
+        this.blendOp = blendOp;
+        if (placeFrame(dst, dstWidth, dstHeight, x, y, width, height, sampleSize)) {
+            decodeData(data, length, lzwMinCodeSize);
+        }
+        this.pixels = null;
+    }
+
+    /**
+     * Decode the palette indices of the frame into a dstWidth x dstHeight byte array,
+     * see GifFrame's native uncompressLZW to indices
+     *
+     * @return false if the stream ended before the frame was complete
+     */
+    boolean decode(byte[] data, int length, int lzwMinCodeSize, boolean interlace, int width, int height,
+                   byte[] dst, int dstWidth, int dstHeight, int x, int y, int sampleSize) {
+        if (dstWidth < 0 || dstHeight < 0 || (long) dstWidth * dstHeight > dst.length) {
+            return false;
+        }
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = i;
+        }
+        this.interlace = interlace;
+        this.blendOp = FrameCompositor.BLEND_OP_SOURCE;
+        boolean complete = false;
+        this.indices = dst;
+        if (placeFrame(null, dstWidth, dstHeight, x, y, width, height, sampleSize)) {
+            complete = decodeData(data, length, lzwMinCodeSize);
+        }
+        this.indices = null;
+        return complete;
+    }
+
+    /**
+     * Apply the previous frame's disposal, save this frame's rect if asked, decode the frame over
+     * the canvas and paint the background behind transparent pixels, see GifFrame's native renderLZW
+     */
+    void render(byte[] data, int length, int[] colorTable, int transparentColorIndex,
+                int lzwMinCodeSize, boolean interlace, int width, int height,
+                int[] canvas, int canvasWidth, int canvasHeight, int x, int y, int sampleSize,
+                int disposeOp, int disposeLeft, int disposeTop, int disposeRight, int disposeBottom,
+                int disposeColor, int[] saved, boolean save, int backgroundColor) {
+        if (!dispose(canvas, canvasWidth, canvasHeight, x, y, width, height, sampleSize,
+                disposeOp, disposeLeft, disposeTop, disposeRight, disposeBottom, disposeColor, saved, save)) {
+            return;
+        }
+        decode(data, length, colorTable, transparentColorIndex, lzwMinCodeSize, interlace, width, height,
+                canvas, canvasWidth, canvasHeight, x, y, sampleSize, FrameCompositor.BLEND_OP_OVER);
+        fillBehind(canvas, canvasWidth * canvasHeight, backgroundColor);
+    }
+
+    /**
+     * Same as {@link #render} with the frame already decoded to indices, which cover the sampled
+     * pixels of the frame starting at sampled canvas position (ceil(x / sampleSize), ceil(y / sampleSize))
+     */
+    void render(byte[] indices, int indicesWidth, int indicesHeight, int[] colorTable, int transparentColorIndex,
+                int width, int height,
+                int[] canvas, int canvasWidth, int canvasHeight, int x, int y, int sampleSize,
+                int disposeOp, int disposeLeft, int disposeTop, int disposeRight, int disposeBottom,
+                int disposeColor, int[] saved, boolean save, int backgroundColor) {
+        if ((long) indicesWidth * indicesHeight > indices.length
+                || !dispose(canvas, canvasWidth, canvasHeight, x, y, width, height, sampleSize,
+                disposeOp, disposeLeft, disposeTop, disposeRight, disposeBottom, disposeColor, saved, save)) {
+            return;
+        }
+        loadPalette(colorTable, transparentColorIndex);
+        int[] palette = this.palette;
+        int left = (x + sampleSize - 1) / sampleSize;
+        int top = (y + sampleSize - 1) / sampleSize;
+        int w = Math.min(indicesWidth, canvasWidth - left);
+        int h = Math.min(indicesHeight, canvasHeight - top);
+        for (int row = 0; row < h; row++) {
+            int src = row * indicesWidth;
+            int dst = (top + row) * canvasWidth + left;
+            for (int col = 0; col < w; col++) {
+                int color = palette[indices[src + col] & 0xff];
+                if (color != 0) {
+                    canvas[dst + col] = color;
+                }
+            }
+        }
+        fillBehind(canvas, canvasWidth * canvasHeight, backgroundColor);
+    }
+
+    /**
+     * Validate the arguments of a render, then apply the previous frame's disposal and save this
+     * frame's rect when asked
+     *
+     * @return false if the arguments are invalid and nothing should be drawn
+     */
+    private static boolean dispose(int[] canvas, int canvasWidth, int canvasHeight,
+                                   int x, int y, int width, int height, int sampleSize,
+                                   int disposeOp, int disposeLeft, int disposeTop, int disposeRight,
+                                   int disposeBottom, int disposeColor, int[] saved, boolean save) {
+        if (canvasWidth < 0 || canvasHeight < 0 || (long) canvasWidth * canvasHeight > canvas.length
+                || sampleSize <= 0) {
+            return false;
+        }
+        int left = clip(disposeLeft, canvasWidth);
+        int top = clip(disposeTop, canvasHeight);
+        int right = Math.max(left, clip(disposeRight, canvasWidth));
+        int bottom = Math.max(top, clip(disposeBottom, canvasHeight));
+        // The sampled pixels a frame covers
+        int saveLeft = clip((x + sampleSize - 1) / sampleSize, canvasWidth);
+        int saveTop = clip((y + sampleSize - 1) / sampleSize, canvasHeight);
+        int saveRight = Math.max(saveLeft, clip((x + width + sampleSize - 1) / sampleSize, canvasWidth));
+        int saveBottom = Math.max(saveTop, clip((y + height + sampleSize - 1) / sampleSize, canvasHeight));
+        boolean restore = disposeOp == FrameCompositor.DISPOSE_OP_PREVIOUS && right > left && bottom > top;
+        save = save && saveRight > saveLeft && saveBottom > saveTop;
+        int savedLength = saved == null ? 0 : saved.length;
+        if ((restore && (right - left) * (bottom - top) > savedLength)
+                || (save && (saveRight - saveLeft) * (saveBottom - saveTop) > savedLength)) {
+            return false;
+        }
+        if (disposeOp == FrameCompositor.DISPOSE_OP_BACKGROUND) {
+            for (int row = top; row < bottom; row++) {
+                Arrays.fill(canvas, row * canvasWidth + left, row * canvasWidth + right, disposeColor);
+            }
+        } else if (restore) {
+            copyRect(saved, 0, right - left, canvas, top * canvasWidth + left, canvasWidth,
+                    right - left, bottom - top);
+        }
+        if (save) {
+            // Only the rect this frame covers is kept, not the whole canvas
+            copyRect(canvas, saveTop * canvasWidth + saveLeft, canvasWidth, saved, 0, saveRight - saveLeft,
+                    saveRight - saveLeft, saveBottom - saveTop);
+        }
+        return true;
+    }
+
+    private static void fillBehind(int[] canvas, int count, int backgroundColor) {
+        if ((backgroundColor >>> 24) == 0) {
+            return;
+        }
+        // GIF pixels are either opaque or fully transparent
+        for (int i = 0; i < count; i++) {
+            if ((canvas[i] >>> 24) == 0) {
+                canvas[i] = backgroundColor;
+            }
+        }
+    }
+
+    private static int clip(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    private static void copyRect(int[] src, int srcOffset, int srcStride,
+                                 int[] dst, int dstOffset, int dstStride, int w, int h) {
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, w);
+            srcOffset += srcStride;
+            dstOffset += dstStride;
+        }
+    }
+
+    /**
+     * Indices without an entry decode as opaque black
+     */
+    private void loadPalette(int[] colorTable, int transparentColorIndex) {
+        int count = Math.min(colorTable.length, palette.length);
+        System.arraycopy(colorTable, 0, palette, 0, count);
+        Arrays.fill(palette, count, palette.length, 0xff000000);
+        if (transparentColorIndex >= 0 && transparentColorIndex < palette.length) {
+            palette[transparentColorIndex] = 0;
+        }
+    }
+
+    /**
+     * x and y may be negative by less than sample, which shifts the sampled origin to the frame
+     *
+     * @return false if no pixel of the frame lands on the destination
+     */
+    private boolean placeFrame(int[] dst, int dstWidth, int dstHeight,
+                               int x, int y, int width, int height, int sample) {
+        if (sample <= 0 || x <= -sample || y <= -sample || width <= 0 || height <= 0) {
+            return false;
+        }
+        this.pixels = dst;
+        this.dstWidth = dstWidth;
+        this.dstHeight = dstHeight;
+        this.frameX = x;
+        this.frameY = y;
+        this.width = width;
+        this.height = height;
+        this.sample = sample;
+        return (x + sample - 1) / sample < dstWidth && (y + sample - 1) / sample < dstHeight;
+    }
+
+    /**
+     * @return false if the stream ended before the frame was complete
+     */
+    private boolean decodeData(byte[] data, int length, int lzwMinCodeSize) {
+        this.data = data;
+        this.length = Math.max(0, Math.min(length, data.length));
+        position = 0;
+        datum = 0;
+        bits = 0;
+        try {
+            return decodeLZW(lzwMinCodeSize);
+        } finally {
+            this.data = null;
+        }
+    }
+
+    /**
+     * Decode the LZW stream, pixels the stream does not cover are left transparent
+     *
+     * @return false if the stream ended before the frame was complete
+     */
+    private boolean decodeLZW(int lzwMinCodeSize) {
+        final short[] prefix = this.prefix;
+        final byte[] suffix = this.suffix;
+        final byte[] stack = this.stack;
+        start();
+        if (lzwMinCodeSize >= 1 && lzwMinCodeSize < MAX_CODE_SIZE) {
+            final int codeClear = 1 << lzwMinCodeSize;
+            final int codeEnd = codeClear + 1;
+            int codeSize = lzwMinCodeSize + 1;
+            int available = codeClear + 2;
+            int oldCode = -1;
+            int first = 0;
+            for (int i = 0; i < codeClear; i++) {
+                prefix[i] = 0;
+                suffix[i] = (byte) i;
+            }
+            int code;
+            while (!done && (code = readCode(codeSize)) >= 0) {
+                if (code == codeClear) {
+                    codeSize = lzwMinCodeSize + 1;
+                    available = codeClear + 2;
+                    oldCode = -1;
+                    continue;
+                }
+                if (code == codeEnd) {
+                    break;
+                }
+                if (oldCode == -1) {
+                    if (code >= codeClear) {
+                        // DECODE ERROR
+                        break;
+                    }
+                    first = code;
+                    oldCode = code;
+                    putColor(palette[first]);
+                    continue;
+                }
+                int inCode = code;
+                int top = 0;
+                if (code >= available) {
+                    if (code > available) {
+                        // DECODE ERROR
+                        break;
+                    }
+                    // KwKwK case, the string is the previous one plus its own first index
+                    stack[top++] = (byte) first;
+                    code = oldCode;
+                }
+                while (code >= codeClear) {
+                    stack[top++] = suffix[code];
+                    code = prefix[code];
+                }
+                first = suffix[code] & 0xff;
+                stack[top++] = (byte) first;
+                if (available < MAX_CODES) {
+                    prefix[available] = (short) oldCode;
+                    suffix[available] = (byte) first;
+                    available++;
+                    if ((available & ((1 << codeSize) - 1)) == 0 && available < MAX_CODES) {
+                        codeSize++;
+                    }
+                }
+                oldCode = inCode;
+                while (top > 0 && !done) {
+                    putColor(palette[stack[--top] & 0xff]);
+                }
+            }
+        }
+        boolean complete = done;
+        if (blendOp == FrameCompositor.BLEND_OP_SOURCE) {
+            while (!done) {
+                putColor(0);
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * @return the next code, or -1 once the data ends
+     */
+    private int readCode(int codeSize) {
+        while (bits < codeSize) {
+            if (position >= length) {
+                return -1;
+            }
+            datum |= (data[position++] & 0xff) << bits;
+            bits += 8;
+        }
+        int code = datum & ((1 << codeSize) - 1);
+        datum >>>= codeSize;
+        bits -= codeSize;
+        return code;
+    }
+
+    private void start() {
+        x = 0;
+        y = 0;
+        pass = 0;
+        done = width <= 0 || height <= 0;
+        firstSkip = (sample - frameX % sample) % sample;
+        firstDstX = (frameX + firstSkip) / sample;
+        startRow();
+    }
+
+    private void putColor(int color) {
+        if (rowOffset >= 0) {
+            if (skip == 0) {
+                if (dstX < dstWidth) {
+                    if (indices != null) {
+                        indices[rowOffset + dstX] = (byte) color;
+                    } else if (color != 0 || blendOp == FrameCompositor.BLEND_OP_SOURCE) {
+                        pixels[rowOffset + dstX] = color;
+                    }
+                }
+                dstX++;
+                skip = sample - 1;
+            } else {
+                skip--;
+            }
+        }
+        if (++x == width) {
+            nextRow();
+        }
+    }
+
+    private void nextRow() {
+        x = 0;
+        if (interlace) {
+            y += PASS_STEP[pass];
+            while (y >= height && pass < 3) {
+                pass++;
+                y = PASS_START[pass];
+            }
+        } else {
+            y++;
+        }
+        if (y >= height) {
+            done = true;
+        }
+        startRow();
+    }
+
+    private void startRow() {
+        int canvasY = frameY + y;
+        rowOffset = -1;
+        if (!done && canvasY % sample == 0 && canvasY / sample < dstHeight) {
+            rowOffset = (canvasY / sample) * dstWidth;
+        }
+        skip = firstSkip;
+        dstX = firstDstX;
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.penfeizhou.animation.gif.decode;
+
+import com.github.penfeizhou.animation.decode.EncodedFrameCache;
+import com.github.penfeizhou.animation.decode.FrameCompositor;
+import com.github.penfeizhou.animation.gif.io.GifReader;
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class GifIndexCacheTest {
+    private static final int WIDTH = 23;
+    private static final int HEIGHT = 19;
+    private static final int[] COLORS = GifTestData.colors(16);
+
+    @After
+    public void restoreDecoder() {
+        GifFrame.setNativeDecoderEnabled(true);
+    }
+
+    /**
+     * The native decoder is only tested when its library is on java.library.path
+     */
+    private static boolean[] decoders() {
+        GifFrame.setNativeDecoderEnabled(true);
+        return GifFrame.isNativeDecoderEnabled() ? new boolean[]{false, true} : new boolean[]{false};
+    }
+
+    private static GifFrame[] frames() throws IOException {
+        return new GifFrame[]{
+                GifTestData.frame(5, 3, 11, 13, true,
+                        GifTestData.pattern(11, 13, 16, 2), 4, 40, COLORS),
+                GifTestData.frame(0, 0, WIDTH, HEIGHT, false,
+                        GifTestData.pattern(WIDTH, HEIGHT, 16, 1), 4, 255, COLORS),
+                GifTestData.frame(2, 7, 17, 9, false,
+                        GifTestData.pattern(17, 9, 16, 3), 4, 255, COLORS),
+        };
+    }
+
+    /**
+     * @return the canvas after each frame of two loops
+     */
+    private static int[][] play(GifFrame[] frames, int sampleSize, EncodedFrameCache cache) throws IOException {
+        return play(frames, sampleSize, cache, new GifFrameBuffers());
+    }
+
+    private static int[][] play(GifFrame[] frames, int sampleSize, EncodedFrameCache cache,
+                                GifFrameBuffers buffers) throws IOException {
+        FrameCompositor compositor = new FrameCompositor(WIDTH / sampleSize, HEIGHT / sampleSize);
+        GifCanvas canvas = new GifCanvas(compositor, buffers);
+        int[][] result = new int[frames.length * 2][];
+        for (int i = 0; i < result.length; i++) {
+            int index = i % frames.length;
+            canvas.render(frames[index], sampleSize, index == 0, 0, cache, index);
+            result[i] = compositor.getCanvas().clone();
+        }
+        return result;
+    }
+
+    private static int sampledSize(GifFrame frame, int sampleSize) {
+        int w = ceilDiv(frame.frameX + frame.frameWidth, sampleSize) - ceilDiv(frame.frameX, sampleSize);
+        int h = ceilDiv(frame.frameY + frame.frameHeight, sampleSize) - ceilDiv(frame.frameY, sampleSize);
+        return w * h;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static void assertSameCanvas(int[][] expected, int[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals("after frame " + i, expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void cachedIndices_renderLikeDirectDecoding() throws IOException {
+        GifFrame[] frames = frames();
+        for (boolean nativeDecoder : decoders()) {
+            GifFrame.setNativeDecoderEnabled(nativeDecoder);
+            for (int sampleSize = 1; sampleSize <= 3; sampleSize++) {
+                int[][] expected = play(frames, sampleSize, null);
+                EncodedFrameCache cache = new EncodedFrameCache(1 << 20);
+                assertSameCanvas(expected, play(frames, sampleSize, cache));
+                // the second loop takes every frame from the cache
+                assertEquals(frames.length, cache.missCount());
+                assertEquals(frames.length, cache.hitCount());
+                int size = 0;
+                for (GifFrame frame : frames) {
+                    size += sampledSize(frame, sampleSize);
+                }
+                assertEquals(size, cache.size());
+            }
+        }
+    }
+
+    @Test
+    public void framesOverBudget_renderDirectly() throws IOException {
+        GifFrame[] frames = frames();
+        for (boolean nativeDecoder : decoders()) {
+            GifFrame.setNativeDecoderEnabled(nativeDecoder);
+            int[][] expected = play(frames, 1, null);
+            // room for the first frame only
+            EncodedFrameCache cache = new EncodedFrameCache(sampledSize(frames[0], 1));
+            GifFrameBuffers buffers = new GifFrameBuffers();
+            assertSameCanvas(expected, play(frames, 1, cache, buffers));
+            // the larger frames never went through the index buffer
+            assertEquals(sampledSize(frames[0], 1), buffers.obtainIndices(0).length);
+            assertEquals(1, cache.hitCount());
+            assertEquals(sampledSize(frames[0], 1), cache.size());
+            assertNotNull(cache.get(0));
+            assertNull(cache.get(1));
+            assertNull(cache.get(2));
+        }
+    }
+
+    @Test
+    public void truncatedFrame_isNotCached() throws IOException {
+        byte[] lzw = GifTestData.lzw(GifTestData.pattern(WIDTH, HEIGHT, 16, 4), 4);
+        byte[] data = GifTestData.imageDescriptor(0, 0, WIDTH, HEIGHT, false, 4,
+                GifTestData.subBlocks(Arrays.copyOf(lzw, lzw.length / 2), 255));
+        GifReader reader = new GifReader(new ByteBufferReader(ByteBuffer.wrap(data)));
+        ImageDescriptor descriptor = new ImageDescriptor();
+        descriptor.receive(reader);
+        GifFrame[] frames = {new GifFrame(reader, GifTestData.colorTable(COLORS), null, descriptor)};
+        for (boolean nativeDecoder : decoders()) {
+            GifFrame.setNativeDecoderEnabled(nativeDecoder);
+            EncodedFrameCache cache = new EncodedFrameCache(1 << 20);
+            assertSameCanvas(play(frames, 1, null), play(frames, 1, cache));
+            assertEquals(0, cache.size());
+        }
+    }
+}
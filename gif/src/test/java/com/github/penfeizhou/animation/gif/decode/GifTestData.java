@@ -0,0 +1,213 @@
+package com.github.penfeizhou.animation.gif.decode;
+
+import com.github.penfeizhou.animation.gif.io.GifReader;
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds GIF image data for the decoder tests, compressed the way giflib does
+ */
+final class GifTestData {
+    private GifTestData() {
+    }
+
+    /**
+     * Pseudo random indices below colors, with short runs so that the LZW table fills up
+     */
+    static byte[] pattern(int width, int height, int colors, long seed) {
+        Random random = new Random(seed);
+        byte[] indices = new byte[width * height];
+        int i = 0;
+        while (i < indices.length) {
+            int run = 1 + random.nextInt(4);
+            byte index = (byte) random.nextInt(colors);
+            for (int j = 0; j < run && i < indices.length; j++) {
+                indices[i++] = index;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Rows of a width x height frame in the order an interlaced GIF stores them
+     */
+    static byte[] interlace(byte[] indices, int width, int height) {
+        byte[] out = new byte[indices.length];
+        int row = 0;
+        int[][] passes = {{0, 8}, {4, 8}, {2, 4}, {1, 2}};
+        for (int[] pass : passes) {
+            for (int y = pass[0]; y < height; y += pass[1]) {
+                System.arraycopy(indices, y * width, out, row++ * width, width);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * LZW stream starting with a clear code and ending with the end code. A clear code is sent
+     * whenever the table is full, the code size grows at the same point the decoder expects.
+     */
+    static byte[] lzw(byte[] indices, int minCodeSize) {
+        BitWriter out = new BitWriter();
+        int clear = 1 << minCodeSize;
+        int end = clear + 1;
+        Map<Integer, Integer> table = new HashMap<>();
+        int codeSize = minCodeSize + 1;
+        int next = end + 1;
+        out.write(clear, codeSize);
+        if (indices.length == 0) {
+            out.write(end, codeSize);
+            return out.toByteArray();
+        }
+        int prefix = indices[0] & 0xff;
+        for (int i = 1; i < indices.length; i++) {
+            int index = indices[i] & 0xff;
+            int key = prefix << 8 | index;
+            Integer code = table.get(key);
+            if (code != null) {
+                prefix = code;
+                continue;
+            }
+            out.write(prefix, codeSize);
+            if (next >= 1 << codeSize && codeSize < 12) {
+                codeSize++;
+            }
+            if (next < 4096) {
+                table.put(key, next++);
+            } else {
+                out.write(clear, codeSize);
+                table.clear();
+                codeSize = minCodeSize + 1;
+                next = end + 1;
+            }
+            prefix = index;
+        }
+        out.write(prefix, codeSize);
+        if (next >= 1 << codeSize && codeSize < 12) {
+            codeSize++;
+        }
+        out.write(end, codeSize);
+        return out.toByteArray();
+    }
+
+    /**
+     * Split data into sub-blocks of at most blockSize bytes followed by the block terminator
+     */
+    static byte[] subBlocks(byte[] data, int blockSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < data.length; i += blockSize) {
+            int size = Math.min(blockSize, data.length - i);
+            out.write(size);
+            out.write(data, i, size);
+        }
+        out.write(0);
+        return out.toByteArray();
+    }
+
+    /**
+     * An Image Descriptor as GifParser hands it over, after the image separator, followed by
+     * the LZW minimum code size and the image data
+     */
+    static byte[] imageDescriptor(int x, int y, int width, int height, boolean interlace,
+                                  int minCodeSize, byte[] subBlocks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeUInt16(out, x);
+        writeUInt16(out, y);
+        writeUInt16(out, width);
+        writeUInt16(out, height);
+        out.write(interlace ? 0x40 : 0);
+        out.write(minCodeSize);
+        out.write(subBlocks, 0, subBlocks.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * A frame using colors as its color table, the descriptor is read from its own reader
+     */
+    static GifFrame frame(int x, int y, int width, int height, boolean interlace, byte[] indices,
+                          int minCodeSize, int blockSize, int[] colors) throws IOException {
+        return frame(x, y, width, height, interlace, indices, minCodeSize, blockSize, colors, null);
+    }
+
+    static GifFrame frame(int x, int y, int width, int height, boolean interlace, byte[] indices,
+                          int minCodeSize, int blockSize, int[] colors,
+                          GraphicControlExtension control) throws IOException {
+        byte[] stored = interlace ? interlace(indices, width, height) : indices;
+        byte[] data = imageDescriptor(x, y, width, height, interlace, minCodeSize,
+                subBlocks(lzw(stored, minCodeSize), blockSize));
+        GifReader reader = new GifReader(new ByteBufferReader(ByteBuffer.wrap(data)));
+        ImageDescriptor descriptor = new ImageDescriptor();
+        descriptor.receive(reader);
+        return new GifFrame(reader, colorTable(colors), control, descriptor);
+    }
+
+    /**
+     * @param transparentIndex -1 for none
+     */
+    static GraphicControlExtension control(int disposalMethod, int transparentIndex) throws IOException {
+        byte[] data = {4, (byte) (disposalMethod << 2 | (transparentIndex >= 0 ? 1 : 0)), 10, 0,
+                (byte) Math.max(0, transparentIndex), 0};
+        GraphicControlExtension control = new GraphicControlExtension();
+        control.receive(new GifReader(new ByteBufferReader(ByteBuffer.wrap(data))));
+        return control;
+    }
+
+    static ColorTable colorTable(int[] colors) throws IOException {
+        byte[] rgb = new byte[colors.length * 3];
+        for (int i = 0; i < colors.length; i++) {
+            rgb[i * 3] = (byte) (colors[i] >> 16);
+            rgb[i * 3 + 1] = (byte) (colors[i] >> 8);
+            rgb[i * 3 + 2] = (byte) colors[i];
+        }
+        ColorTable table = new ColorTable(colors.length);
+        table.receive(new GifReader(new ByteBufferReader(ByteBuffer.wrap(rgb))));
+        return table;
+    }
+
+    /**
+     * Distinct opaque 0xRRGGBB colors
+     */
+    static int[] colors(int count) {
+        int[] colors = new int[count];
+        for (int i = 0; i < count; i++) {
+            colors[i] = (i * 0x3b) << 16 | (i * 0x95 & 0xff) << 8 | (255 - i);
+        }
+        return colors;
+    }
+
+    private static void writeUInt16(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write(value >> 8 & 0xff);
+    }
+
+    private static class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int datum;
+        private int bits;
+
+        void write(int code, int codeSize) {
+            datum |= code << bits;
+            bits += codeSize;
+            while (bits >= 8) {
+                out.write(datum & 0xff);
+                datum >>>= 8;
+                bits -= 8;
+            }
+        }
+
+        byte[] toByteArray() {
+            if (bits > 0) {
+                out.write(datum & 0xff);
+                datum = 0;
+                bits = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+}
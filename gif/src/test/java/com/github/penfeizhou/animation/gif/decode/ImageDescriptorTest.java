@@ -0,0 +1,106 @@
+package com.github.penfeizhou.animation.gif.decode;
+
+import com.github.penfeizhou.animation.gif.io.GifReader;
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ImageDescriptorTest {
+    private static final int[] COLORS = GifTestData.colors(16);
+
+    @After
+    public void restoreDecoder() {
+        GifFrame.setNativeDecoderEnabled(true);
+    }
+
+    private static GifReader reader(byte[] data) {
+        return new GifReader(new ByteBufferReader(ByteBuffer.wrap(data)));
+    }
+
+    @Test
+    public void subBlocks_recordTheOffsetOfEachSizeByte() throws IOException {
+        byte[] lzw = new byte[600];
+        // the offset table starts at 16 entries and has to grow
+        for (int blockSize : new int[]{1, 7, 255}) {
+            byte[] data = GifTestData.imageDescriptor(3, 4, 20, 30, false, 4, GifTestData.subBlocks(lzw, blockSize));
+            GifReader reader = reader(data);
+            ImageDescriptor descriptor = new ImageDescriptor();
+            descriptor.receive(reader);
+
+            assertEquals(3, descriptor.frameX);
+            assertEquals(4, descriptor.frameY);
+            assertEquals(4, descriptor.lzwMinimumCodeSize);
+            // 4 uint16, the packed fields and the code size
+            assertEquals(10, descriptor.imageDataOffset);
+            int blockCount = (lzw.length + blockSize - 1) / blockSize;
+            // data, one size byte per block and the terminator
+            assertEquals(lzw.length + blockCount + 1, descriptor.imageDataLength);
+            int[] expected = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                expected[i] = i * (blockSize + 1);
+            }
+            assertArrayEquals("block size " + blockSize, expected, descriptor.subBlocks);
+            // the reader is left after the terminator
+            assertEquals(data.length, reader.position());
+        }
+    }
+
+    @Test
+    public void localColorTable_isSkippedBeforeTheImageData() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[8], 0, 8);
+        // local color table of 4 entries
+        out.write(0x80 | 1);
+        out.write(new byte[12], 0, 12);
+        out.write(2);
+        byte[] blocks = GifTestData.subBlocks(new byte[5], 255);
+        out.write(blocks, 0, blocks.length);
+        ImageDescriptor descriptor = new ImageDescriptor();
+        descriptor.receive(reader(out.toByteArray()));
+        assertEquals(4, descriptor.localColorTable.getColorTable().length);
+        assertEquals(22, descriptor.imageDataOffset);
+        assertEquals(7, descriptor.imageDataLength);
+        assertArrayEquals(new int[]{0}, descriptor.subBlocks);
+    }
+
+    @Test
+    public void noImageData_recordsOnlyTheTerminator() throws IOException {
+        ImageDescriptor descriptor = new ImageDescriptor();
+        descriptor.receive(reader(GifTestData.imageDescriptor(0, 0, 1, 1, false, 2, new byte[]{0})));
+        assertEquals(1, descriptor.imageDataLength);
+        assertEquals(0, descriptor.subBlocks.length);
+    }
+
+    @Test
+    public void frameData_isTheSameForAnyBlockSize() throws IOException {
+        GifFrame.setNativeDecoderEnabled(false);
+        byte[] frame = GifTestData.pattern(31, 23, 16, 9);
+        int[] expected = null;
+        // one set of buffers for all frames, as a caller decoding frames in a row keeps it
+        GifFrameBuffers buffers = new GifFrameBuffers();
+        for (int blockSize : new int[]{255, 1, 2, 100}) {
+            GifFrame gifFrame = GifTestData.frame(0, 0, 31, 23, false, frame, 4, blockSize, COLORS);
+            int[] pixels = new int[31 * 23];
+            // decoded twice, the size bytes are stripped from a fresh read every time
+            gifFrame.encode(pixels, 1, buffers);
+            gifFrame.encode(pixels, 1, buffers);
+            if (expected == null) {
+                expected = pixels;
+            } else {
+                assertArrayEquals("block size " + blockSize, expected, pixels);
+            }
+        }
+        int[] palette = GifTestData.colorTable(COLORS).getColorTable();
+        for (int i = 0; i < frame.length; i++) {
+            assertEquals(palette[frame[i]], expected[i]);
+        }
+    }
+}
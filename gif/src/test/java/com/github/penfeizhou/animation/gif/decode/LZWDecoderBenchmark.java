@@ -0,0 +1,119 @@
+package com.github.penfeizhou.animation.gif.decode;
+
+import com.github.penfeizhou.animation.decode.FrameCompositor;
+import com.github.penfeizhou.animation.gif.io.GifReader;
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the Java and the native LZW decoder, rendering every frame of the sample GIFs
+ * of the app module the way GifDecoder plays them. The native decoder is only measured when its
+ * library is on java.library.path, which a host build of src/main/cpp provides.
+ * Skipped unless run with -Pbenchmark=true, e.g.
+ * ./gradlew :gif:testDebugUnitTest -Pbenchmark=true --tests '*LZWDecoderBenchmark'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class LZWDecoderBenchmark {
+    @Param({"1.gif", "2.gif", "3.gif", "4.gif", "5.gif", "world-cup.gif"})
+    public String file;
+    @Param({"java", "native"})
+    public String decoder;
+    @Param({"1", "2"})
+    public int sampleSize;
+
+    private final List<GifFrame> frames = new ArrayList<>();
+    private GifCanvas canvas;
+
+    @BeforeClass
+    public static void checkEnabled() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        GifFrame.setNativeDecoderEnabled(true);
+        String[] decoders = GifFrame.isNativeDecoderEnabled() ? new String[]{"java", "native"} : new String[]{"java"};
+        new Runner(new OptionsBuilder()
+                .include(LZWDecoderBenchmark.class.getSimpleName())
+                .param("decoder", decoders)
+                .build()).run();
+    }
+
+    /**
+     * Gradle runs unit tests in the module directory
+     */
+    private static File sample(String name) {
+        File file = new File("../app/src/main/assets", name);
+        return file.exists() ? file : new File("app/src/main/assets", name);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        GifFrame.setNativeDecoderEnabled("native".equals(decoder));
+        byte[] data = Files.readAllBytes(sample(file).toPath());
+        GifReader reader = new GifReader(new ByteBufferReader(ByteBuffer.wrap(data)));
+        int width = 0, height = 0;
+        ColorTable globalColorTable = null;
+        GraphicControlExtension control = null;
+        for (Block block : GifParser.parse(reader)) {
+            if (block instanceof LogicalScreenDescriptor) {
+                width = ((LogicalScreenDescriptor) block).screenWidth;
+                height = ((LogicalScreenDescriptor) block).screenHeight;
+            } else if (block instanceof ColorTable) {
+                globalColorTable = (ColorTable) block;
+            } else if (block instanceof GraphicControlExtension) {
+                control = (GraphicControlExtension) block;
+            } else if (block instanceof ImageDescriptor) {
+                frames.add(new GifFrame(reader, globalColorTable, control, (ImageDescriptor) block));
+            }
+        }
+        canvas = new GifCanvas(new FrameCompositor(width / sampleSize, height / sampleSize), new GifFrameBuffers());
+    }
+
+    @TearDown
+    public void tearDown() {
+        GifFrame.setNativeDecoderEnabled(true);
+    }
+
+    /**
+     * One loop of the animation
+     */
+    @Benchmark
+    public int loop() throws IOException {
+        for (int i = 0; i < frames.size(); i++) {
+            canvas.render(frames.get(i), sampleSize, i == 0, 0, null, i);
+        }
+        return frames.size();
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.penfeizhou.animation.gif.decode;
+
+import com.github.penfeizhou.animation.decode.FrameCompositor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A sampled canvas holds the full size pixels at multiples of sampleSize, a frame at any offset
+ * must land its pixels on that grid and nowhere else
+ */
+public class LZWDecoderSamplingTest {
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+    private static final int UNTOUCHED = 0x12345678;
+    private static final int[] COLORS = GifTestData.colors(8);
+    private static final byte[] FRAME = GifTestData.pattern(WIDTH, HEIGHT, 8, 7);
+    private static final byte[] LZW = GifTestData.lzw(FRAME, 3);
+
+    @After
+    public void restoreDecoder() {
+        GifFrame.setNativeDecoderEnabled(true);
+    }
+
+    private static int[] palette() throws IOException {
+        return GifTestData.colorTable(COLORS).getColorTable();
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    @Test
+    public void pixels_landOnTheSampledGrid() throws IOException {
+        int[] palette = palette();
+        LZWDecoder decoder = new LZWDecoder();
+        for (int sampleSize = 1; sampleSize <= 3; sampleSize++) {
+            for (int x = 0; x <= 5; x++) {
+                for (int y = 0; y <= 5; y++) {
+                    // one spare column and row that no frame pixel reaches
+                    int dstWidth = ceilDiv(x + WIDTH, sampleSize) + 1;
+                    int dstHeight = ceilDiv(y + HEIGHT, sampleSize) + 1;
+                    int[] dst = new int[dstWidth * dstHeight];
+                    Arrays.fill(dst, UNTOUCHED);
+                    decoder.decode(LZW, LZW.length, palette, -1, 3, false, WIDTH, HEIGHT,
+                            dst, dstWidth, dstHeight, x, y, sampleSize, FrameCompositor.BLEND_OP_SOURCE);
+
+                    int[] expected = new int[dst.length];
+                    for (int row = 0; row < dstHeight; row++) {
+                        for (int col = 0; col < dstWidth; col++) {
+                            int frameCol = col * sampleSize - x;
+                            int frameRow = row * sampleSize - y;
+                            boolean inside = frameCol >= 0 && frameCol < WIDTH && frameRow >= 0 && frameRow < HEIGHT;
+                            expected[row * dstWidth + col] = inside
+                                    ? palette[FRAME[frameRow * WIDTH + frameCol]] : UNTOUCHED;
+                        }
+                    }
+                    assertArrayEquals("sample " + sampleSize + " at " + x + "," + y, expected, dst);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void indices_startAtTheFirstSampledPixelOfTheFrame() {
+        LZWDecoder decoder = new LZWDecoder();
+        for (int sampleSize = 2; sampleSize <= 3; sampleSize++) {
+            for (int frameX = 0; frameX <= 5; frameX++) {
+                for (int frameY = 0; frameY <= 5; frameY++) {
+                    int left = ceilDiv(frameX, sampleSize);
+                    int top = ceilDiv(frameY, sampleSize);
+                    int width = ceilDiv(frameX + WIDTH, sampleSize) - left;
+                    int height = ceilDiv(frameY + HEIGHT, sampleSize) - top;
+                    // origin relative to the first sampled pixel, negative by less than sampleSize
+                    int x = frameX - left * sampleSize;
+                    int y = frameY - top * sampleSize;
+                    byte[] indices = new byte[width * height];
+                    assertTrue(decoder.decode(LZW, LZW.length, 3, false, WIDTH, HEIGHT,
+                            indices, width, height, x, y, sampleSize));
+                    byte[] expected = new byte[indices.length];
+                    for (int row = 0; row < height; row++) {
+                        for (int col = 0; col < width; col++) {
+                            expected[row * width + col] = FRAME[(row * sampleSize - y) * WIDTH + col * sampleSize - x];
+                        }
+                    }
+                    assertArrayEquals("sample " + sampleSize + " at " + frameX + "," + frameY, expected, indices);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void disposalRect_isTheSampledFrameRect() throws IOException {
+        int[] palette = palette();
+        GifFrame.setNativeDecoderEnabled(true);
+        boolean[] decoders = GifFrame.isNativeDecoderEnabled() ? new boolean[]{false, true} : new boolean[]{false};
+        byte[] background = GifTestData.pattern(11, 11, 8, 1);
+        byte[] dot = {3};
+        for (boolean nativeDecoder : decoders) {
+            GifFrame.setNativeDecoderEnabled(nativeDecoder);
+            for (int sampleSize = 1; sampleSize <= 3; sampleSize++) {
+                GifFrame[] frames = {
+                        GifTestData.frame(0, 0, 11, 11, false, background, 3, 255, COLORS),
+                        GifTestData.frame(4, 5, WIDTH, HEIGHT, false, FRAME, 3, 255, COLORS,
+                                GifTestData.control(2, -1)),
+                        GifTestData.frame(0, 0, 1, 1, false, dot, 3, 255, COLORS),
+                };
+                int width = 11 / sampleSize;
+                int height = 11 / sampleSize;
+                FrameCompositor compositor = new FrameCompositor(width, height);
+                GifCanvas canvas = new GifCanvas(compositor, new GifFrameBuffers());
+                for (int i = 0; i < frames.length; i++) {
+                    canvas.render(frames[i], sampleSize, i == 0, 0, null, i);
+                }
+
+                int[] expected = new int[width * height];
+                for (int row = 0; row < height; row++) {
+                    for (int col = 0; col < width; col++) {
+                        int fullX = col * sampleSize;
+                        int fullY = row * sampleSize;
+                        int color = palette[background[fullY * 11 + fullX]];
+                        if (fullX >= 4 && fullX < 4 + WIDTH && fullY >= 5 && fullY < 5 + HEIGHT) {
+                            // the second frame was restored to transparent
+                            color = 0;
+                        }
+                        if (fullX == 0 && fullY == 0) {
+                            color = palette[dot[0]];
+                        }
+                        expected[row * width + col] = color;
+                    }
+                }
+                assertArrayEquals((nativeDecoder ? "native" : "java") + " sample " + sampleSize,
+                        expected, compositor.getCanvas());
+            }
+        }
+    }
+}
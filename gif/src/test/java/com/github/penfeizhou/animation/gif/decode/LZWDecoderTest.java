@@ -0,0 +1,145 @@
+package com.github.penfeizhou.animation.gif.decode;
+
+import com.github.penfeizhou.animation.decode.FrameCompositor;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LZWDecoderTest {
+
+    @After
+    public void restoreDecoder() {
+        GifFrame.setNativeDecoderEnabled(true);
+    }
+
+    /**
+     * Decode a frame's indices at full size
+     */
+    private static byte[] decode(byte[] lzw, int minCodeSize, boolean interlace, int width, int height) {
+        byte[] indices = new byte[width * height];
+        assertTrue(new LZWDecoder().decode(lzw, lzw.length, minCodeSize, interlace, width, height,
+                indices, width, height, 0, 0, 1));
+        return indices;
+    }
+
+    @Test
+    public void plainFrame_8bitPalette() {
+        // long enough for the code table to fill up and be cleared several times
+        byte[] frame = GifTestData.pattern(200, 100, 256, 1);
+        assertArrayEquals(frame, decode(GifTestData.lzw(frame, 8), 8, false, 200, 100));
+    }
+
+    @Test
+    public void plainFrame_1bitPalette() {
+        // GIF encoders use a minimum code size of 2 for two colors
+        byte[] frame = GifTestData.pattern(33, 17, 2, 2);
+        assertArrayEquals(frame, decode(GifTestData.lzw(frame, 2), 2, false, 33, 17));
+    }
+
+    @Test
+    public void interlacedFrame_rowsGoBackInPlace() {
+        // heights that end in each of the four passes
+        for (int height = 1; height <= 17; height++) {
+            byte[] frame = GifTestData.pattern(13, height, 16, height);
+            byte[] lzw = GifTestData.lzw(GifTestData.interlace(frame, 13, height), 4);
+            assertArrayEquals("height " + height, frame, decode(lzw, 4, true, 13, height));
+        }
+    }
+
+    @Test
+    public void singleColorRun_decodesKwKwKCodes() {
+        // every code after the first names the string the decoder has not defined yet
+        byte[] frame = new byte[64 * 64];
+        Arrays.fill(frame, (byte) 5);
+        assertArrayEquals(frame, decode(GifTestData.lzw(frame, 4), 4, false, 64, 64));
+        // and with the smallest code size
+        byte[] zeros = new byte[64 * 64];
+        assertArrayEquals(zeros, decode(GifTestData.lzw(zeros, 2), 2, false, 64, 64));
+    }
+
+    @Test
+    public void truncatedData_isReportedAndLeftTransparent() throws IOException {
+        int[] palette = GifTestData.colorTable(GifTestData.colors(16)).getColorTable();
+        byte[] frame = GifTestData.pattern(40, 30, 16, 4);
+        byte[] lzw = GifTestData.lzw(frame, 4);
+        int length = lzw.length / 2;
+
+        byte[] indices = new byte[frame.length];
+        assertFalse(new LZWDecoder().decode(lzw, length, 4, false, 40, 30, indices, 40, 30, 0, 0, 1));
+
+        int[] pixels = new int[frame.length];
+        Arrays.fill(pixels, -1);
+        new LZWDecoder().decode(lzw, length, palette, -1, 4, false, 40, 30,
+                pixels, 40, 30, 0, 0, 1, FrameCompositor.BLEND_OP_SOURCE);
+        int decoded = 0;
+        while (decoded < pixels.length && pixels[decoded] != 0) {
+            assertEquals(palette[frame[decoded]], pixels[decoded]);
+            decoded++;
+        }
+        assertTrue(decoded > 0 && decoded < pixels.length);
+        // the rest of the frame is written transparent, not left as it was
+        for (int i = decoded; i < pixels.length; i++) {
+            assertEquals(0, pixels[i]);
+        }
+        // no data at all
+        assertFalse(new LZWDecoder().decode(lzw, 0, 4, false, 40, 30, indices, 40, 30, 0, 0, 1));
+    }
+
+    @Test
+    public void sampleSize2And3_keepEveryNthPixel() throws IOException {
+        int[] palette = GifTestData.colorTable(GifTestData.colors(16)).getColorTable();
+        byte[] frame = GifTestData.pattern(41, 29, 16, 5);
+        for (boolean interlace : new boolean[]{false, true}) {
+            byte[] lzw = GifTestData.lzw(interlace ? GifTestData.interlace(frame, 41, 29) : frame, 4);
+            for (int sampleSize = 2; sampleSize <= 3; sampleSize++) {
+                int width = 41 / sampleSize;
+                int height = 29 / sampleSize;
+                int[] pixels = new int[width * height];
+                new LZWDecoder().decode(lzw, lzw.length, palette, -1, 4, interlace, 41, 29,
+                        pixels, width, height, 0, 0, sampleSize, FrameCompositor.BLEND_OP_SOURCE);
+                int[] expected = new int[pixels.length];
+                for (int row = 0; row < height; row++) {
+                    for (int col = 0; col < width; col++) {
+                        expected[row * width + col] = palette[frame[row * sampleSize * 41 + col * sampleSize]];
+                    }
+                }
+                assertArrayEquals("interlace " + interlace + " sample " + sampleSize, expected, pixels);
+            }
+        }
+    }
+
+    @Test
+    public void javaDecoder_matchesNative() throws IOException {
+        GifFrame.setNativeDecoderEnabled(true);
+        Assume.assumeTrue("native decoder not on java.library.path", GifFrame.isNativeDecoderEnabled());
+        int[][] palettes = {GifTestData.colors(2), GifTestData.colors(256)};
+        GifFrameBuffers buffers = new GifFrameBuffers();
+        for (int[] colors : palettes) {
+            int minCodeSize = colors.length == 2 ? 2 : 8;
+            byte[] frame = GifTestData.pattern(57, 43, colors.length, colors.length);
+            for (boolean interlace : new boolean[]{false, true}) {
+                GifFrame gifFrame = GifTestData.frame(0, 0, 57, 43, interlace, frame, minCodeSize, 255, colors,
+                        GifTestData.control(0, 1));
+                for (int sampleSize = 1; sampleSize <= 3; sampleSize++) {
+                    int[] java = new int[(57 / sampleSize) * (43 / sampleSize)];
+                    int[] nativePixels = new int[java.length];
+                    GifFrame.setNativeDecoderEnabled(false);
+                    gifFrame.encode(java, sampleSize, buffers);
+                    GifFrame.setNativeDecoderEnabled(true);
+                    gifFrame.encode(nativePixels, sampleSize, buffers);
+                    assertArrayEquals(colors.length + " colors interlace " + interlace + " sample " + sampleSize,
+                            nativePixels, java);
+                }
+            }
+        }
+    }
+}
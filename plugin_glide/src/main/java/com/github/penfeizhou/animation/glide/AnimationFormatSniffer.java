@@ -0,0 +1,179 @@
+package com.github.penfeizhou.animation.glide;
+
+import com.github.penfeizhou.animation.apng.decode.APNGParser;
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+import com.github.penfeizhou.animation.io.Reader;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.BufferUnderflowException;
+
+/**
+ * @Description: Decides the animation format from the first bytes of the source in one pass,
+ * instead of running every parser's probe in turn. Only APNG and AVIF need more than the header:
+ * {@link APNGParser#hasACTL} walks the PNG chunk headers up to acTL or the first IDAT, and the
+ * whole AVIF ftyp box is read for its brands.
+ * The result of {@link #sniff(Object, Reader)} is kept per thread for the following
+ * {@link #take(Object)}, since Glide calls handles() and decode() back to back on one thread.
+ */
+public final class AnimationFormatSniffer {
+    public enum Format {
+        UNKNOWN,
+        GIF,
+        APNG,
+        WEBP,
+        AVIF,
+    }
+
+    private static final int HEADER_SIZE = 32;
+    /**
+     * Larger ftyp boxes are not taken for AVIF, real ones list a handful of brands
+     */
+    private static final int MAX_FTYP_SIZE = 4096;
+    private static final int FOURCC_RIFF = fourCC("RIFF");
+    private static final int FOURCC_WEBP = fourCC("WEBP");
+    private static final int FOURCC_VP8X = fourCC("VP8X");
+    private static final int FOURCC_FTYP = fourCC("ftyp");
+    private static final int FOURCC_AVIF = fourCC("avif");
+    private static final int FOURCC_AVIS = fourCC("avis");
+    private static final byte[] PNG_SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    private static final ThreadLocal<byte[]> sHeader = new ThreadLocal<>();
+    private static final ThreadLocal<Sniffed> sLast = new ThreadLocal<>();
+
+    private static class Sniffed {
+        private final WeakReference<Object> source;
+        private final Format format;
+
+        private Sniffed(Object source, Format format) {
+            this.source = new WeakReference<>(source);
+            this.format = format;
+        }
+    }
+
+    private AnimationFormatSniffer() {
+    }
+
+    /**
+     * Sniff the reader from its current position and remember the result for source
+     */
+    public static Format sniff(Object source, Reader reader) {
+        Format format = sniff(reader);
+        sLast.set(new Sniffed(source, format));
+        return format;
+    }
+
+    /**
+     * @return format remembered for source by the last {@link #sniff(Object, Reader)} on this
+     * thread, or null if it was for another source. The entry is cleared either way.
+     */
+    public static Format take(Object source) {
+        Sniffed last = sLast.get();
+        sLast.remove();
+        if (last != null && last.source.get() == source) {
+            return last.format;
+        }
+        return null;
+    }
+
+    public static Format sniff(Reader reader) {
+        byte[] header = sHeader.get();
+        if (header == null) {
+            header = new byte[HEADER_SIZE];
+            sHeader.set(header);
+        }
+        try {
+            int length = readFully(reader, header, 0, PNG_SIGNATURE.length);
+            if (length == PNG_SIGNATURE.length && startsWith(header, PNG_SIGNATURE)) {
+                return APNGParser.hasACTL(reader) ? Format.APNG : Format.UNKNOWN;
+            }
+            length += readFully(reader, header, length, HEADER_SIZE - length);
+            if (length >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F'
+                    && header[3] == '8' && (header[4] == '7' || header[4] == '9') && header[5] == 'a') {
+                return Format.GIF;
+            }
+            if (length >= 21 && intBE(header, 0) == FOURCC_RIFF && intBE(header, 8) == FOURCC_WEBP) {
+                // VP8X must be the first chunk, its flags hold the animation bit
+                return intBE(header, 12) == FOURCC_VP8X && (header[20] & 0x02) != 0 ? Format.WEBP : Format.UNKNOWN;
+            }
+            if (length >= 16 && intBE(header, 4) == FOURCC_FTYP) {
+                return hasAVIFBrand(reader, header, length) ? Format.AVIF : Format.UNKNOWN;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            // ByteBufferReader past its limit, the source is truncated
+        }
+        return Format.UNKNOWN;
+    }
+
+    /**
+     * Check the major brand and every compatible brand of the ftyp box at the start of header,
+     * reading the part of the brand list beyond the header from reader
+     *
+     * @param length bytes already read into header
+     */
+    private static boolean hasAVIFBrand(Reader reader, byte[] header, int length) throws IOException {
+        int boxSize = intBE(header, 0);
+        if (boxSize < 16 || boxSize > MAX_FTYP_SIZE) {
+            return false;
+        }
+        int major = intBE(header, 8);
+        if (major == FOURCC_AVIF || major == FOURCC_AVIS) {
+            return true;
+        }
+        // compatible brands follow major_brand and minor_version
+        for (int offset = 16; offset + 4 <= boxSize; offset += 4) {
+            int brand;
+            if (offset + 4 <= length) {
+                brand = intBE(header, offset);
+            } else {
+                int have = Math.max(0, length - offset);
+                System.arraycopy(header, offset < length ? offset : 0, header, 0, have);
+                if (readFully(reader, header, have, 4 - have) != 4 - have) {
+                    return false;
+                }
+                length = 0;
+                brand = intBE(header, 0);
+            }
+            if (brand == FOURCC_AVIF || brand == FOURCC_AVIS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int readFully(Reader reader, byte[] buffer, int start, int byteCount) throws IOException {
+        if (reader instanceof ByteBufferReader) {
+            // throws instead of reading short, but knows exactly how much is left
+            byteCount = Math.min(byteCount, reader.available());
+        }
+        int read = 0;
+        while (read < byteCount) {
+            int count = reader.read(buffer, start + read, byteCount - read);
+            if (count <= 0) {
+                break;
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int intBE(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+                | (data[offset + 2] & 0xff) << 8 | data[offset + 3] & 0xff;
+    }
+
+    private static int fourCC(String chars) {
+        return chars.charAt(0) << 24 | chars.charAt(1) << 16 | chars.charAt(2) << 8 | chars.charAt(3);
+    }
+}
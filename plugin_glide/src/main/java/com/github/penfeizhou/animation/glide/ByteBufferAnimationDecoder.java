@@ -6,18 +6,15 @@ import androidx.annotation.Nullable;
 import com.bumptech.glide.load.Options;
 import com.bumptech.glide.load.ResourceDecoder;
 import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.request.target.Target;
 import com.github.penfeizhou.animation.apng.decode.APNGDecoder;
-import com.github.penfeizhou.animation.apng.decode.APNGParser;
 import com.github.penfeizhou.animation.avif.decode.AVIFDecoder;
-import com.github.penfeizhou.animation.avif.decode.AVIFParser;
 import com.github.penfeizhou.animation.decode.FrameSeqDecoder;
 import com.github.penfeizhou.animation.gif.decode.GifDecoder;
-import com.github.penfeizhou.animation.gif.decode.GifParser;
 import com.github.penfeizhou.animation.io.ByteBufferReader;
 import com.github.penfeizhou.animation.loader.ByteBufferLoader;
 import com.github.penfeizhou.animation.loader.Loader;
 import com.github.penfeizhou.animation.webp.decode.WebPDecoder;
-import com.github.penfeizhou.animation.webp.decode.WebPParser;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -31,15 +28,40 @@ public class ByteBufferAnimationDecoder implements ResourceDecoder<ByteBuffer, F
 
     @Override
     public boolean handles(@NonNull ByteBuffer source, @NonNull Options options) {
-        return (!options.get(AnimationDecoderOption.DISABLE_ANIMATION_WEBP_DECODER) && WebPParser.isAWebP(new ByteBufferReader(source)))
-                || (!options.get(AnimationDecoderOption.DISABLE_ANIMATION_APNG_DECODER) && APNGParser.isAPNG(new ByteBufferReader(source)))
-                || (!options.get(AnimationDecoderOption.DISABLE_ANIMATION_GIF_DECODER) && GifParser.isGif(new ByteBufferReader(source)))
-                || (!options.get(AnimationDecoderOption.DISABLE_ANIMATION_AVIF_DECODER) && AVIFParser.isAVIF(new ByteBufferReader(source)));
+        return isEnabled(AnimationFormatSniffer.sniff(source, new ByteBufferReader(source)), options);
+    }
+
+    static boolean isEnabled(AnimationFormatSniffer.Format format, Options options) {
+        switch (format) {
+            case WEBP:
+                return !options.get(AnimationDecoderOption.DISABLE_ANIMATION_WEBP_DECODER);
+            case APNG:
+                return !options.get(AnimationDecoderOption.DISABLE_ANIMATION_APNG_DECODER);
+            case GIF:
+                return !options.get(AnimationDecoderOption.DISABLE_ANIMATION_GIF_DECODER);
+            case AVIF:
+                return !options.get(AnimationDecoderOption.DISABLE_ANIMATION_AVIF_DECODER);
+            default:
+                return false;
+        }
     }
 
     @Nullable
     @Override
     public Resource<FrameSeqDecoder> decode(@NonNull final ByteBuffer source, int width, int height, @NonNull Options options) throws IOException {
+        AnimationFormatSniffer.Format format = AnimationFormatSniffer.take(source);
+        if (format == null) {
+            format = AnimationFormatSniffer.sniff(new ByteBufferReader(source));
+        }
+        return decode(source, format, width, height, options);
+    }
+
+    /**
+     * @param format already sniffed from source
+     */
+    @Nullable
+    Resource<FrameSeqDecoder> decode(@NonNull final ByteBuffer source, AnimationFormatSniffer.Format format,
+                                     int width, int height, @NonNull Options options) throws IOException {
         Loader loader = new ByteBufferLoader() {
             @Override
             public ByteBuffer getByteBuffer() {
@@ -48,22 +70,37 @@ public class ByteBufferAnimationDecoder implements ResourceDecoder<ByteBuffer, F
             }
         };
         final FrameSeqDecoder decoder;
-        if (WebPParser.isAWebP(new ByteBufferReader(source))) {
-            decoder = new WebPDecoder(loader, null);
-        } else if (APNGParser.isAPNG(new ByteBufferReader(source))) {
-            decoder = new APNGDecoder(loader, null);
-        } else if (GifParser.isGif(new ByteBufferReader(source))) {
-            decoder = new GifDecoder(loader, null);
-        } else if (AVIFParser.isAVIF(new ByteBufferReader(source))) {
-            decoder = new AVIFDecoder(loader, null);
-        } else {
-            return null;
+        switch (format) {
+            case WEBP:
+                decoder = new WebPDecoder(loader, null);
+                break;
+            case APNG:
+                decoder = new APNGDecoder(loader, null);
+                break;
+            case GIF:
+                decoder = new GifDecoder(loader, null);
+                break;
+            case AVIF:
+                decoder = new AVIFDecoder(loader, null);
+                break;
+            default:
+                return null;
+        }
+        if (width != Target.SIZE_ORIGINAL && height != Target.SIZE_ORIGINAL) {
+            decoder.setTargetSize(width, height);
         }
-        return new FrameSeqDecoderResource(decoder, source.limit());
+        // 解码阶段只读文件头估算采样后的画布及帧缓存大小，之后不再随播放变化；
+        // 不做完整解析，首帧转码仍只解析第一帧
+        long size = (long) source.limit() + decoder.peekEstimatedMemorySize();
+        return new FrameSeqDecoderResource(decoder, (int) Math.min(Integer.MAX_VALUE, size));
     }
 
     private static class FrameSeqDecoderResource implements Resource<FrameSeqDecoder> {
         private final FrameSeqDecoder decoder;
+        /**
+         * Encoded source, kept alive by the decoder's loader, plus the decoder's estimated memory.
+         * Fixed at decode time, a memory cache must see the same size on put and on remove.
+         */
         private final int size;
 
         FrameSeqDecoderResource(FrameSeqDecoder decoder, int size) {
@@ -31,7 +31,13 @@ class FrameBitmapTranscoder implements ResourceTranscoder<FrameSeqDecoder, Bitma
     public Resource<Bitmap> transcode(@NonNull Resource<FrameSeqDecoder> toTranscode, @NonNull Options options) {
         FrameSeqDecoder frameSeqDecoder = toTranscode.get();
         try {
-            Bitmap bitmap = frameSeqDecoder.getFrameBitmap(0);
+            // 只解析并解码第一帧，直接写入BitmapPool中的Bitmap
+            Bitmap bitmap = frameSeqDecoder.getFirstFrameBitmap(new FrameSeqDecoder.BitmapProvider() {
+                @Override
+                public Bitmap obtain(int width, int height) {
+                    return bitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+                }
+            });
             return BitmapResource.obtain(bitmap, bitmapPool);
         } catch (IOException e) {
             e.printStackTrace();
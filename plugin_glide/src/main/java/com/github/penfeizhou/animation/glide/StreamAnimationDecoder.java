@@ -6,13 +6,8 @@ import androidx.annotation.Nullable;
 import com.bumptech.glide.load.Options;
 import com.bumptech.glide.load.ResourceDecoder;
 import com.bumptech.glide.load.engine.Resource;
-import com.github.penfeizhou.animation.apng.decode.APNGParser;
-import com.github.penfeizhou.animation.avif.decode.AVIFParser;
 import com.github.penfeizhou.animation.decode.FrameSeqDecoder;
-import com.github.penfeizhou.animation.gif.decode.GifParser;
-import com.github.penfeizhou.animation.io.ByteBufferReader;
 import com.github.penfeizhou.animation.io.StreamReader;
-import com.github.penfeizhou.animation.webp.decode.WebPParser;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -34,20 +29,22 @@ public class StreamAnimationDecoder implements ResourceDecoder<InputStream, Fram
 
     @Override
     public boolean handles(@NonNull InputStream source, @NonNull Options options) {
-        return (!options.get(AnimationDecoderOption.DISABLE_ANIMATION_WEBP_DECODER) && WebPParser.isAWebP(new StreamReader(source)))
-                || (!options.get(AnimationDecoderOption.DISABLE_ANIMATION_APNG_DECODER) && APNGParser.isAPNG(new StreamReader(source)))
-                || (!options.get(AnimationDecoderOption.DISABLE_ANIMATION_GIF_DECODER) && GifParser.isGif(new StreamReader(source)))
-                || (!options.get(AnimationDecoderOption.DISABLE_ANIMATION_AVIF_DECODER) && AVIFParser.isAVIF(new StreamReader(source)));
+        return ByteBufferAnimationDecoder.isEnabled(
+                AnimationFormatSniffer.sniff(source, new StreamReader(source)), options);
     }
 
     @Nullable
     @Override
     public Resource<FrameSeqDecoder> decode(@NonNull final InputStream source, int width, int height, @NonNull Options options) throws IOException {
+        AnimationFormatSniffer.Format format = AnimationFormatSniffer.take(source);
         byte[] data = inputStreamToBytes(source);
         if (data == null) {
             return null;
         }
         ByteBuffer byteBuffer = ByteBuffer.wrap(data);
+        if (format != null && byteBufferDecoder instanceof ByteBufferAnimationDecoder) {
+            return ((ByteBufferAnimationDecoder) byteBufferDecoder).decode(byteBuffer, format, width, height, options);
+        }
         return byteBufferDecoder.decode(byteBuffer, width, height, options);
     }
 
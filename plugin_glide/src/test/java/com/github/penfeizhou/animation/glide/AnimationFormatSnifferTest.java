@@ -0,0 +1,84 @@
+package com.github.penfeizhou.animation.glide;
+
+import com.github.penfeizhou.animation.io.ByteBufferReader;
+import com.github.penfeizhou.animation.io.StreamReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnimationFormatSnifferTest {
+    private static AnimationFormatSniffer.Format sniff(byte[] data) {
+        AnimationFormatSniffer.Format format = AnimationFormatSniffer.sniff(new ByteBufferReader(ByteBuffer.wrap(data)));
+        // a stream must give the same answer
+        assertEquals(format, AnimationFormatSniffer.sniff(new StreamReader(new ByteArrayInputStream(data))));
+        return format;
+    }
+
+    @Test
+    public void gif() {
+        assertEquals(AnimationFormatSniffer.Format.GIF, sniff("GIF89a\u0001\u0000\u0001\u0000".getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    public void apng_needsACTLBeforeIDAT() throws IOException {
+        assertEquals(AnimationFormatSniffer.Format.APNG, sniff(png("IHDR", "tEXt", "acTL", "IDAT")));
+        assertEquals(AnimationFormatSniffer.Format.UNKNOWN, sniff(png("IHDR", "IDAT", "acTL")));
+        assertEquals(AnimationFormatSniffer.Format.UNKNOWN, sniff(png("IHDR")));
+    }
+
+    @Test
+    public void avif_brandLateInALongCompatibleList() throws IOException {
+        String[] brands = {"mif1", "miaf", "MA1B", "iso8", "msf1", "iso9", "heic", "mif2", "avis"};
+        assertEquals(AnimationFormatSniffer.Format.AVIF, sniff(ftyp("msf1", brands)));
+        assertEquals(AnimationFormatSniffer.Format.AVIF, sniff(ftyp("avif", new String[]{"mif1"})));
+        assertEquals(AnimationFormatSniffer.Format.UNKNOWN, sniff(ftyp("heic", new String[]{"mif1", "heic"})));
+    }
+
+    @Test
+    public void truncated_isUnknown() throws IOException {
+        byte[] avif = ftyp("mif1", new String[]{"mif1", "miaf", "MA1B", "iso8", "avif"});
+        // cut inside the last brand
+        byte[] truncated = new byte[avif.length - 8 - 2];
+        System.arraycopy(avif, 0, truncated, 0, truncated.length);
+        assertEquals(AnimationFormatSniffer.Format.UNKNOWN, sniff(truncated));
+        assertEquals(AnimationFormatSniffer.Format.UNKNOWN, sniff(new byte[3]));
+    }
+
+    private static byte[] png(String... chunks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        for (String chunk : chunks) {
+            byte[] data = new byte[chunk.equals("IHDR") ? 13 : 20];
+            out.writeInt(data.length);
+            out.write(chunk.getBytes(StandardCharsets.US_ASCII));
+            out.write(data);
+            out.writeInt(0);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] ftyp(String major, String[] compatible) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(16 + compatible.length * 4);
+        out.write("ftyp".getBytes(StandardCharsets.US_ASCII));
+        out.write(major.getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(0);
+        for (String brand : compatible) {
+            out.write(brand.getBytes(StandardCharsets.US_ASCII));
+        }
+        // start of the next box
+        out.writeInt(8);
+        out.write("meta".getBytes(StandardCharsets.US_ASCII));
+        return bytes.toByteArray();
+    }
+}